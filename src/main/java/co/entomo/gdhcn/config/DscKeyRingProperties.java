@@ -0,0 +1,40 @@
+package co.entomo.gdhcn.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * @author Uday Matta
+ * @organization Entomo Labs
+ *               DSC signing keys held in addition to the single
+ *               {@code tng.dsc.privateKey}, one per issuer and KID, bound from
+ *               {@code tng.dsc.keyRing[n].issuer}, {@code .kid},
+ *               {@code .privateKey} and {@code .active}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "tng.dsc")
+public class DscKeyRingProperties {
+
+    private List<Entry> keyRing = new ArrayList<>();
+
+    /**
+     * One DSC signing key of the key ring.
+     */
+    @Data
+    public static class Entry {
+        /** Issuing country code written to the {@code iss} claim. */
+        private String issuer;
+        /** KID of the DSC as published in the trust list. */
+        private String kid;
+        /** Path of the PEM encoded PKCS#8 private key. */
+        private String privateKey;
+        /** Whether the key signs requests that name only the issuer; the last key of an issuer otherwise. */
+        private boolean active;
+    }
+}
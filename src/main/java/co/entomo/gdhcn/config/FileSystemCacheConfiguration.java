@@ -0,0 +1,49 @@
+package co.entomo.gdhcn.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import co.entomo.gdhcn.service.GdhcnFileSystem;
+import co.entomo.gdhcn.service.impl.CachingFileSystem;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author Uday Matta
+ * @organization Entomo Labs
+ *               Puts a {@link CachingFileSystem} in front of whichever
+ *               {@link GdhcnFileSystem} the active profile provides, unless
+ *               {@code gdhcn.fileCache.maxBytes} is 0.
+ */
+@Slf4j
+@Configuration
+public class FileSystemCacheConfiguration {
+
+    /**
+     * Wraps the file system bean once it is initialized. The post processor is
+     * static so that it is registered before any file system is created.
+     *
+     * @return the post processor decorating the file system.
+     */
+    @Bean
+    public static BeanPostProcessor fileSystemCachePostProcessor(Environment environment,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                long maxBytes = environment.getProperty("gdhcn.fileCache.maxBytes", Long.class, 67108864L);
+                if (!(bean instanceof GdhcnFileSystem fileSystem) || bean instanceof CachingFileSystem || maxBytes <= 0)
+                    return bean;
+                int maxEntryBytes = environment.getProperty("gdhcn.fileCache.maxEntryBytes", Integer.class, 1048576);
+                long ttl = environment.getProperty("gdhcn.fileCache.ttl", Long.class, 300L);
+                boolean offHeap = environment.getProperty("gdhcn.fileCache.offHeap", Boolean.class, false);
+                log.info("Caching up to " + maxBytes + " bytes of " + beanName + (offHeap ? " off heap" : ""));
+                return new CachingFileSystem(fileSystem, meterRegistry.getObject(), maxBytes, maxEntryBytes, ttl,
+                        offHeap);
+            }
+        };
+    }
+}
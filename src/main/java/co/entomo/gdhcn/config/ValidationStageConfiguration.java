@@ -0,0 +1,241 @@
+package co.entomo.gdhcn.config;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.upokecenter.cbor.CBORObject;
+import com.upokecenter.cbor.CBORType;
+
+import COSE.HeaderKeys;
+import COSE.Message;
+import COSE.MessageTag;
+import COSE.OneKey;
+import COSE.Sign1Message;
+import co.entomo.gdhcn.exceptions.GdhcnValidationException;
+import co.entomo.gdhcn.hcert.Base45Codec;
+import co.entomo.gdhcn.hcert.CwtClaims;
+import co.entomo.gdhcn.hcert.GreenCertificateDecoder;
+import co.entomo.gdhcn.validation.PreValidation;
+import co.entomo.gdhcn.validation.PreValidationResult;
+import co.entomo.gdhcn.validation.ValidationContext;
+import co.entomo.gdhcn.validation.ValidationStage;
+import co.entomo.gdhcn.vo.HealthCertificate;
+import co.entomo.gdhcn.vo.SHLinkContent;
+import co.entomo.gdhcn.vo.SmartHealthLink;
+import co.entomo.gdhcn.vo.ValidationDescription;
+import co.entomo.gdhcn.vo.ValidationStatus;
+
+/**
+ * @author Uday Matta
+ * @organization Entomo Labs
+ *               Declares the standard validation stages, one per
+ *               {@link ValidationDescription} step. The {@code @Order} of each
+ *               bean sets its place in the pipeline; further checks are added
+ *               by declaring more {@link ValidationStage} beans.
+ */
+@Configuration
+public class ValidationStageConfiguration {
+
+    public static final String SHLINK_PREFIX = "shlink://";
+
+    private final ObjectReader shLinkReader = new ObjectMapper().readerFor(SHLinkContent.class);
+    @Value("${gdhcn.validation.maxCoseBytes:65536}")
+    private int maxCoseBytes;
+    @Value("${gdhcn.validation.maxQrLength:4296}")
+    private int maxQrLength;
+
+    /**
+     * Rejects content with a wrong prefix, an implausible length or characters
+     * outside the Base45 alphabet before anything is decoded, then decodes it.
+     * The pipeline runs the checks before hashing the content for its cache and
+     * leaves the outcome in the context.
+     */
+    @Bean
+    @Order(100)
+    public ValidationStage decodeBase45Stage() {
+        return ValidationStage.of(ValidationDescription.DECODE_BASE45, context -> {
+            PreValidationResult result = context.getPreValidationResult();
+            if (result == null)
+                result = PreValidation.checkContent(context.getQrCodeContent(), maxQrLength);
+            if (!result.isValid())
+                return context.fail(result.getReason());
+            String content = context.getQrCodeContent();
+            int length = Base45Codec.decodedLength(content.length() - PreValidation.HC1_PREFIX.length());
+            Base45Codec.decode(content, PreValidation.HC1_PREFIX.length(), content.length(), context.buffer(length), 0);
+            context.setBufferLength(length);
+            return ValidationStatus.SUCCESS;
+        });
+    }
+
+    @Bean
+    @Order(200)
+    public ValidationStage inflateStage() {
+        return ValidationStage.of(ValidationDescription.DEFLATE_COSE_BYTES, context -> {
+            PreValidationResult result = PreValidation.checkZlibHeader(context.getBuffer(), 0, context.getBufferLength());
+            if (!result.isValid())
+                return context.fail(result.getReason());
+            context.setCoseBytes(GreenCertificateDecoder.getCoseBytes(context.getBuffer(), 0,
+                    context.getBufferLength(), maxCoseBytes));
+            return ValidationStatus.SUCCESS;
+        });
+    }
+
+    @Bean
+    @Order(300)
+    public ValidationStage coseMessageStage() {
+        return ValidationStage.of(ValidationDescription.CONVERT_COSE_MESSAGE, context -> {
+            PreValidationResult result = PreValidation.checkCoseSign1Header(context.getCoseBytes());
+            if (!result.isValid())
+                return context.fail(result.getReason());
+            Message message = Message.DecodeFromBytes(context.getCoseBytes(), MessageTag.Sign1);
+            if (!(message instanceof Sign1Message sign1Message))
+                return context.fail("Not a COSE_Sign1 message");
+            context.setMessage(sign1Message);
+            return ValidationStatus.SUCCESS;
+        });
+    }
+
+    @Bean
+    @Order(400)
+    public ValidationStage claimsStage() {
+        return ValidationStage.of(ValidationDescription.COSE_MESSAGE_PAYLOAD_TO_JSON, context -> {
+            byte[] content = context.getMessage().GetContent();
+            PreValidationResult result = PreValidation.checkCborMap(content);
+            if (!result.isValid())
+                return context.fail(result.getReason());
+            CBORObject claims = CBORObject.DecodeFromBytes(content);
+            context.setClaims(claims);
+            context.setPayload(CwtClaims.decode(claims));
+            return ValidationStatus.SUCCESS;
+        });
+    }
+
+    /**
+     * Extracts the KID. A CWT without an issuer claim is let through, its key is
+     * then looked up by KID alone across all countries.
+     */
+    @Bean
+    @Order(500)
+    public ValidationStage countryCodeStage() {
+        return ValidationStage.of(ValidationDescription.EXTRACT_COUNTRY_CODE, context -> {
+            CBORObject kid = context.getMessage().getProtectedAttributes().get(HeaderKeys.KID.AsCBOR());
+            if (kid == null || kid.getType() != CBORType.TextString)
+                return context.fail("No text KID in protected header");
+            context.setKid(kid.AsString());
+            return ValidationStatus.SUCCESS;
+        });
+    }
+
+    /**
+     * Looks up the DSC public key. In an asynchronous validation the lookup is
+     * left running while the Smart Health Link is decoded and checked.
+     */
+    @Bean
+    @Order(600)
+    public ValidationStage publicKeyStage() {
+        return new ValidationStage() {
+            @Override
+            public ValidationDescription getStep() {
+                return ValidationDescription.FETCH_PUBLIC_KEY_GDHCN;
+            }
+
+            @Override
+            public ValidationStatus apply(ValidationContext context) {
+                try {
+                    OneKey key = context.getSigningKeyResolver().resolve(issuer(context), context.getKid());
+                    return accept(context, key);
+                } catch (GdhcnValidationException e) {
+                    return context.fail(e.getMessage());
+                }
+            }
+
+            @Override
+            public CompletableFuture<ValidationStatus> applyAsync(ValidationContext context) {
+                return context.getAsyncSigningKeyResolver().resolve(issuer(context), context.getKid())
+                        .handle((key, error) -> {
+                            if (error != null) {
+                                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                        ? error.getCause() : error;
+                                return context.fail(cause.getMessage());
+                            }
+                            return accept(context, key);
+                        });
+            }
+
+            @Override
+            public boolean isAsync() {
+                return true;
+            }
+
+            private ValidationStatus accept(ValidationContext context, OneKey key) {
+                if (key == null)
+                    return context.fail("No key for " + context.getKid());
+                context.setSigningKey(key);
+                return ValidationStatus.SUCCESS;
+            }
+
+            @Override
+            public String toString() {
+                return getStep().name();
+            }
+        };
+    }
+
+    /**
+     * @return the issuer claim, or {@code null} if it is absent or blank.
+     */
+    private static String issuer(ValidationContext context) {
+        String iss = context.getPayload().getIss();
+        return StringUtils.hasText(iss) ? iss : null;
+    }
+
+    @Bean
+    @Order(700)
+    public ValidationStage signatureStage() {
+        return ValidationStage.of(ValidationDescription.VALIDATE_SIGNATURE,
+                Set.of(ValidationDescription.FETCH_PUBLIC_KEY_GDHCN), context ->
+                GreenCertificateDecoder.validate(context.getMessage(), context.getSigningKey())
+                        ? ValidationStatus.SUCCESS
+                        : context.fail("Signature validation failed"));
+    }
+
+    @Bean
+    @Order(800)
+    public ValidationStage healthLinkStage() {
+        return ValidationStage.of(ValidationDescription.EXTRACT_HCERT, context -> {
+            HealthCertificate healthCertificate = context.getPayload().getHealthCertificate();
+            List<SmartHealthLink> links = healthCertificate == null ? null : healthCertificate.getHealthLinks();
+            if (links == null || links.isEmpty())
+                return context.fail("No Smart Health Link in hcert claim");
+            String shLink = links.get(0).getShLink();
+            if (shLink == null || !shLink.startsWith(SHLINK_PREFIX))
+                return context.fail("Smart Health Link does not start with " + SHLINK_PREFIX);
+            context.setShLink(shLink);
+            return ValidationStatus.SUCCESS;
+        });
+    }
+
+    @Bean
+    @Order(900)
+    public ValidationStage expiryStage() {
+        return ValidationStage.of(ValidationDescription.VALIDATE_EXPIRY, context -> {
+            byte[] json = Base64.getDecoder().decode(context.getShLink().substring(SHLINK_PREFIX.length()));
+            SHLinkContent shLinkContent = shLinkReader.readValue(json);
+            if (shLinkContent.getExp() != null && System.currentTimeMillis() > shLinkContent.getExp())
+                return context.fail("Smart Health Link expired");
+            context.setShLinkContent(shLinkContent);
+            return ValidationStatus.SUCCESS;
+        });
+    }
+}
@@ -1,19 +1,29 @@
 package co.entomo.gdhcn.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import co.entomo.gdhcn.vo.*;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import co.entomo.gdhcn.exceptions.GdhcnValidationException;
 import co.entomo.gdhcn.service.GdhcnService;
@@ -50,6 +60,88 @@ public class GdhcnController {
 		return ResponseEntity.of(Optional.of(cwt));
 	}
 
+	/**
+	 * Endpoint for issuing a VSHC for a large FHIR document sent as the raw request
+	 * body. The body is written to storage as it is read and is never parsed; the
+	 * metadata is taken from the query parameters.
+	 *
+	 * @param passCode  the passcode protecting the QR code, if any.
+	 * @param expiresOn the expiry of the QR code, if any.
+	 * @param issuer    the issuing country to sign for, the service country when omitted.
+	 * @param kid       the KID of the DSC key to sign with, the issuer's active key when omitted.
+	 * @param request   the request whose body is the FHIR document.
+	 * @return a {@link ResponseEntity} containing the issued VSHC with the size
+	 *         and digest of the stored document.
+	 * @throws GdhcnValidationException if the Content-Length is missing, or the document is too large or cannot be stored.
+	 * @throws IOException if the request body cannot be read.
+	 */
+	@Operation(summary = "Issues a QR code for a FHIR document streamed as the request body.")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", description = "QR Code created", content = {
+					@Content(mediaType = "application/json", schema = @Schema(implementation = DocumentIssuanceResponse.class)) }),
+	})
+	@PostMapping(value = "/v2/vshcIssuance/document", consumes = { "application/fhir+json", MediaType.APPLICATION_JSON_VALUE }, produces = { "application/json" })
+	public ResponseEntity<DocumentIssuanceResponse> vshcIssuanceDocumentBody(@RequestParam(name = "passCode", required = false) String passCode,
+			@RequestParam(name = "expiresOn", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date expiresOn,
+			@RequestParam(name = "issuer", required = false) String issuer, @RequestParam(name = "kid", required = false) String kid,
+			HttpServletRequest request) throws GdhcnValidationException, IOException {
+		long contentLength = request.getContentLengthLong();
+		if (contentLength < 0)
+			throw new GdhcnValidationException("Content-Length required");
+		QrCodeRequest metadata = QrCodeRequest.builder().passCode(passCode).expiresOn(expiresOn)
+				.issuer(issuer).kid(kid).build();
+		try (InputStream content = request.getInputStream()) {
+			DocumentIssuanceResponse response = gdhcnService.vshcIssuance(metadata, content, contentLength);
+			return ResponseEntity.of(Optional.of(response));
+		}
+	}
+
+	/**
+	 * Endpoint for issuing a VSHC for a large FHIR document uploaded as a multipart
+	 * request. The container spools the document part to a temporary file before
+	 * it is copied to storage, so the raw body variant should be preferred; the
+	 * document is never parsed and only the metadata part is read as JSON.
+	 *
+	 * @param metadata the issuance metadata, without {@code jsonContent}.
+	 * @param document the FHIR document.
+	 * @return a {@link ResponseEntity} containing the issued VSHC with the size
+	 *         and digest of the stored document.
+	 * @throws GdhcnValidationException if the document is too large or cannot be stored.
+	 * @throws IOException if the document part cannot be read.
+	 */
+	@Operation(summary = "Issues a QR code for a FHIR document uploaded as a multipart part.")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", description = "QR Code created", content = {
+					@Content(mediaType = "application/json", schema = @Schema(implementation = DocumentIssuanceResponse.class)) }),
+	})
+	@PostMapping(value = "/v2/vshcIssuance/document", consumes = { MediaType.MULTIPART_FORM_DATA_VALUE }, produces = { "application/json" })
+	public ResponseEntity<DocumentIssuanceResponse> vshcIssuanceDocument(@RequestPart("metadata") QrCodeRequest metadata,
+			@RequestPart("document") MultipartFile document) throws GdhcnValidationException, IOException {
+		try (InputStream content = document.getInputStream()) {
+			DocumentIssuanceResponse response = gdhcnService.vshcIssuance(metadata, content, document.getSize());
+			return ResponseEntity.of(Optional.of(response));
+		}
+	}
+
+	/**
+	 * Endpoint for issuing VSHCs in bulk.
+	 *
+	 * @param body the request body containing the QR code requests.
+	 * @return a {@link ResponseEntity} containing one result per request, in input order.
+	 * @throws GdhcnValidationException if the batch cannot be processed.
+	 */
+	@Operation(summary = "Issues QR codes for a batch of JSON documents.")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", description = "Batch processed, see the status of each item", content = {
+					@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = IssuanceResult.class))) }),
+	})
+	@PostMapping(value = "/v2/vshcIssuance/batch", produces = { "application/json" })
+	public ResponseEntity<List<IssuanceResult>> vshcIssuanceBatch(@Valid @RequestBody BatchIssuanceRequest body)
+			throws GdhcnValidationException {
+		List<IssuanceResult> results = gdhcnService.vshcIssuanceBatch(body.getRequests());
+		return ResponseEntity.of(Optional.of(results));
+	}
+
 	/**
 	 * Endpoint for validating a VSHC.
 	 *
@@ -70,11 +162,50 @@ public class GdhcnController {
 		return ResponseEntity.of(Optional.of(status));
 	}
 
+	/**
+	 * Endpoint for validating a VSHC without holding a request thread while the
+	 * DSC public key is fetched from the GDHCN.
+	 *
+	 * @param body the request body containing the QR code content.
+	 * @return a future of the {@link ResponseEntity} containing the validation
+	 *         response in FHIR JSON format.
+	 */
+	@Operation(summary = "Validates a QR code asynchronously.")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", description = "QR Validated successfully", content = {
+					@Content(mediaType = "application/json", schema = @Schema(implementation = ValidateCwtResponse.class)) }),
+	})
+	@PostMapping(value = "/v2/vshcValidation/async", produces = { "application/fhir+json" })
+	public CompletableFuture<ResponseEntity<ValidateCwtResponse>> vshcValidationAsync(@Valid @RequestBody ValidateRequest body) {
+		return gdhcnService.vshcValidationAsync(body.getQrCodeContent()).thenApply(ResponseEntity::ok);
+	}
+
+	/**
+	 * Endpoint for validating VSHCs in bulk.
+	 *
+	 * @param body the request body containing the QR code contents.
+	 * @return a {@link ResponseEntity} containing one validation response per QR
+	 *         code, in input order.
+	 * @throws GdhcnValidationException if the batch cannot be processed.
+	 */
+	@Operation(summary = "Validates a batch of QR codes.")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", description = "Batch validated, see the status of each item", content = {
+					@Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ValidateCwtResponse.class))) }),
+	})
+	@PostMapping(value = "/v2/vshcValidation/batch", produces = { "application/fhir+json" })
+	public ResponseEntity<List<ValidateCwtResponse>> vshcValidationBatch(@Valid @RequestBody BatchValidateRequest body)
+			throws GdhcnValidationException {
+		List<ValidateCwtResponse> responses = gdhcnService.vshcValidationBatch(body.getQrCodeContents());
+		return ResponseEntity.of(Optional.of(responses));
+	}
+
 	/**
 	 * Endpoint for retrieving IPS JSON data.
 	 *
 	 * @param manifestId the ID of the JSON data to retrieve.
-	 * @return a {@link ResponseEntity} containing the JSON content.
+	 * @return a {@link ResponseEntity} streaming the JSON content, with its
+	 *         Content-Length when the storage knows it.
 	 */
 	@Operation(summary = "Endpoint for retrieving IPS JSON data.", description = "Please request a new URL when it is not longer accessible (Last around 5 min).")
 	@ApiResponses(value = {
@@ -83,11 +214,11 @@ public class GdhcnController {
 	})
 	@CrossOrigin(origins = "*", allowedHeaders = "*")
 	@GetMapping(value = "/v2/ips-json/{manifestId}", produces = { "application/json" })
-	public ResponseEntity<String> getIpsJson(
-			@PathVariable("jsonId") @Parameter(name = "manifestId", description = "IPS JSON identifier", example = "manifest-id", required = true) String manifestId)
+	public ResponseEntity<Resource> getIpsJson(
+			@PathVariable("manifestId") @Parameter(name = "manifestId", description = "IPS JSON identifier", example = "manifest-id", required = true) String manifestId)
 			throws GdhcnValidationException {
-		String jsonContent = gdhcnService.downloadJson(manifestId);
-		return ResponseEntity.of(Optional.of(jsonContent));
+		Resource jsonContent = gdhcnService.downloadJson(manifestId);
+		return ResponseEntity.of(Optional.ofNullable(jsonContent));
 	}
 
 	/**
@@ -3,17 +3,22 @@ package co.entomo.gdhcn.entity;
 import java.util.Date;
 
 import org.hibernate.annotations.CreationTimestamp;
+import org.springframework.data.domain.Persistable;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.Table;
 import jakarta.persistence.Temporal;
 import jakarta.persistence.TemporalType;
+import jakarta.persistence.Transient;
 import lombok.Data;
 
 /**
@@ -23,7 +28,7 @@ import lombok.Data;
 @Data
 @Entity
 @Table(name = "qr_code")
-public class QrCode {
+public class QrCode implements Persistable<String> {
 
 	@Id
 	@Column(length = 36)
@@ -56,4 +61,24 @@ public class QrCode {
 
 	@Column(nullable = false)
 	private String manifestId;
+
+	/**
+	 * Ids are assigned before saving, so Spring Data cannot tell new rows apart;
+	 * marking them lets new rows be inserted (and batched) without a prior select.
+	 */
+	@Transient
+	@JsonIgnore
+	private boolean newEntity = true;
+
+	@Override
+	@JsonIgnore
+	public boolean isNew() {
+		return newEntity;
+	}
+
+	@PostLoad
+	@PostPersist
+	void markNotNew() {
+		this.newEntity = false;
+	}
 }
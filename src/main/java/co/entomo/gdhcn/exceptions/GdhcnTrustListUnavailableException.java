@@ -0,0 +1,17 @@
+package co.entomo.gdhcn.exceptions;
+
+/**
+ * @author Uday Matta
+ * @organization Entomo Labs
+ * Thrown when the GDHCN trust list cannot be reached, as opposed to the
+ * trust list answering that a country or key is unknown.
+ */
+public class GdhcnTrustListUnavailableException extends GdhcnValidationException {
+    public GdhcnTrustListUnavailableException(String message) {
+        super(message);
+    }
+
+    public GdhcnTrustListUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,256 @@
+package co.entomo.gdhcn.hcert;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Table driven Base45 codec (RFC 9285). Encoding and decoding write into
+ * caller supplied arrays or buffers and validate the alphabet in the same pass
+ * that converts the input, so the array and buffer methods allocate nothing.
+ * Invalid input is rejected with an {@link IllegalArgumentException}.
+ */
+public final class Base45Codec {
+
+	private static final byte[] ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] DIGITS = new byte[128];
+
+	static {
+		Arrays.fill(DIGITS, (byte) -1);
+		for (int i = 0; i < ALPHABET.length; i++)
+			DIGITS[ALPHABET[i]] = (byte) i;
+	}
+
+	private Base45Codec() {
+	}
+
+	/**
+	 * @param length the number of bytes to encode.
+	 * @return the number of characters they encode to.
+	 */
+	public static int encodedLength(int length) {
+		return length / 2 * 3 + length % 2 * 2;
+	}
+
+	/**
+	 * @param length the number of Base45 characters.
+	 * @return the number of bytes they decode to.
+	 * @throws IllegalArgumentException if no Base45 string has that length.
+	 */
+	public static int decodedLength(int length) {
+		if (length % 3 == 1)
+			throw new IllegalArgumentException("Invalid Base45 length " + length);
+		return length / 3 * 2 + length % 3 / 2;
+	}
+
+	/**
+	 * Encodes {@code length} bytes of {@code src} as ASCII Base45 characters into {@code dst}.
+	 *
+	 * @return the number of characters written.
+	 */
+	public static int encode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+		Objects.checkFromIndexSize(srcOffset, length, src.length);
+		Objects.checkFromIndexSize(dstOffset, encodedLength(length), dst.length);
+		int d = dstOffset;
+		int i = srcOffset;
+		int last = srcOffset + length - 1;
+		for (; i < last; i += 2) {
+			int n = (src[i] & 0xff) << 8 | src[i + 1] & 0xff;
+			dst[d++] = ALPHABET[n % 45];
+			n /= 45;
+			dst[d++] = ALPHABET[n % 45];
+			dst[d++] = ALPHABET[n / 45];
+		}
+		if (i == last) {
+			int n = src[i] & 0xff;
+			dst[d++] = ALPHABET[n % 45];
+			dst[d++] = ALPHABET[n / 45];
+		}
+		return d - dstOffset;
+	}
+
+	/**
+	 * Encodes the remaining bytes of {@code src} into {@code dst}, advancing both positions.
+	 *
+	 * @return the number of characters written.
+	 * @throws BufferOverflowException if {@code dst} has too little room; neither buffer is then modified.
+	 */
+	public static int encode(ByteBuffer src, ByteBuffer dst) {
+		int length = src.remaining();
+		int encoded = encodedLength(length);
+		if (dst.remaining() < encoded)
+			throw new BufferOverflowException();
+		if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+			encode(src.array(), src.arrayOffset() + src.position(), length,
+					dst.array(), dst.arrayOffset() + dst.position());
+			src.position(src.limit());
+			dst.position(dst.position() + encoded);
+			return encoded;
+		}
+		while (src.remaining() >= 2) {
+			int n = (src.get() & 0xff) << 8 | src.get() & 0xff;
+			dst.put(ALPHABET[n % 45]);
+			n /= 45;
+			dst.put(ALPHABET[n % 45]);
+			dst.put(ALPHABET[n / 45]);
+		}
+		if (src.hasRemaining()) {
+			int n = src.get() & 0xff;
+			dst.put(ALPHABET[n % 45]);
+			dst.put(ALPHABET[n / 45]);
+		}
+		return encoded;
+	}
+
+	/**
+	 * @param src the bytes to encode.
+	 * @return their Base45 encoding.
+	 */
+	public static String encodeToString(byte[] src) {
+		byte[] dst = new byte[encodedLength(src.length)];
+		encode(src, 0, src.length, dst, 0);
+		return new String(dst, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Decodes the Base45 characters of {@code src} between {@code start} (inclusive)
+	 * and {@code end} (exclusive) into {@code dst}.
+	 *
+	 * @return the number of bytes written.
+	 * @throws IllegalArgumentException if the range is not valid Base45.
+	 */
+	public static int decode(CharSequence src, int start, int end, byte[] dst, int dstOffset) {
+		Objects.checkFromToIndex(start, end, src.length());
+		int decoded = decodedLength(end - start);
+		Objects.checkFromIndexSize(dstOffset, decoded, dst.length);
+		int d = dstOffset;
+		int i = start;
+		for (; i + 2 < end; i += 3) {
+			int n = digit(src.charAt(i), i) + digit(src.charAt(i + 1), i + 1) * 45
+					+ digit(src.charAt(i + 2), i + 2) * 2025;
+			if (n > 0xffff)
+				throw new IllegalArgumentException("Invalid Base45 triplet at index " + i);
+			dst[d++] = (byte) (n >> 8);
+			dst[d++] = (byte) n;
+		}
+		if (i < end) {
+			int n = digit(src.charAt(i), i) + digit(src.charAt(i + 1), i + 1) * 45;
+			if (n > 0xff)
+				throw new IllegalArgumentException("Invalid Base45 pair at index " + i);
+			dst[d] = (byte) n;
+		}
+		return decoded;
+	}
+
+	/**
+	 * Decodes {@code length} ASCII Base45 characters of {@code src} into {@code dst}.
+	 *
+	 * @return the number of bytes written.
+	 * @throws IllegalArgumentException if the range is not valid Base45.
+	 */
+	public static int decode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+		Objects.checkFromIndexSize(srcOffset, length, src.length);
+		int decoded = decodedLength(length);
+		Objects.checkFromIndexSize(dstOffset, decoded, dst.length);
+		int end = srcOffset + length;
+		int d = dstOffset;
+		int i = srcOffset;
+		for (; i + 2 < end; i += 3) {
+			int n = digit(src[i] & 0xff, i) + digit(src[i + 1] & 0xff, i + 1) * 45
+					+ digit(src[i + 2] & 0xff, i + 2) * 2025;
+			if (n > 0xffff)
+				throw new IllegalArgumentException("Invalid Base45 triplet at index " + i);
+			dst[d++] = (byte) (n >> 8);
+			dst[d++] = (byte) n;
+		}
+		if (i < end) {
+			int n = digit(src[i] & 0xff, i) + digit(src[i + 1] & 0xff, i + 1) * 45;
+			if (n > 0xff)
+				throw new IllegalArgumentException("Invalid Base45 pair at index " + i);
+			dst[d] = (byte) n;
+		}
+		return decoded;
+	}
+
+	/**
+	 * Decodes the remaining ASCII characters of {@code src} into {@code dst}, advancing both positions.
+	 *
+	 * @return the number of bytes written.
+	 * @throws BufferOverflowException if {@code dst} has too little room; neither buffer is then modified.
+	 * @throws IllegalArgumentException if the input is not valid Base45; {@code dst} may then hold partial output.
+	 */
+	public static int decode(ByteBuffer src, ByteBuffer dst) {
+		int length = src.remaining();
+		int decoded = decodedLength(length);
+		if (dst.remaining() < decoded)
+			throw new BufferOverflowException();
+		if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+			decode(src.array(), src.arrayOffset() + src.position(), length,
+					dst.array(), dst.arrayOffset() + dst.position());
+			src.position(src.limit());
+			dst.position(dst.position() + decoded);
+			return decoded;
+		}
+		int start = src.position();
+		int end = src.limit();
+		int i = start;
+		for (; i + 2 < end; i += 3) {
+			int n = digit(src.get(i) & 0xff, i - start) + digit(src.get(i + 1) & 0xff, i + 1 - start) * 45
+					+ digit(src.get(i + 2) & 0xff, i + 2 - start) * 2025;
+			if (n > 0xffff)
+				throw new IllegalArgumentException("Invalid Base45 triplet at index " + (i - start));
+			dst.put((byte) (n >> 8));
+			dst.put((byte) n);
+		}
+		if (i < end) {
+			int n = digit(src.get(i) & 0xff, i - start) + digit(src.get(i + 1) & 0xff, i + 1 - start) * 45;
+			if (n > 0xff)
+				throw new IllegalArgumentException("Invalid Base45 pair at index " + (i - start));
+			dst.put((byte) n);
+		}
+		src.position(end);
+		return decoded;
+	}
+
+	/**
+	 * Decodes the Base45 characters of {@code src} between {@code start} (inclusive)
+	 * and {@code end} (exclusive), such as a QR code content past its prefix.
+	 *
+	 * @return the decoded bytes.
+	 * @throws IllegalArgumentException if the range is not valid Base45.
+	 */
+	public static byte[] decode(CharSequence src, int start, int end) {
+		byte[] dst = new byte[decodedLength(end - start)];
+		decode(src, start, end, dst, 0);
+		return dst;
+	}
+
+	/**
+	 * Checks, without decoding, that a range has a valid Base45 length and only
+	 * holds characters of the Base45 alphabet.
+	 *
+	 * @return {@code true} if the range passes both checks.
+	 */
+	public static boolean isBase45(CharSequence src, int start, int end) {
+		if ((end - start) % 3 == 1)
+			return false;
+		for (int i = start; i < end; i++) {
+			char c = src.charAt(i);
+			if (c >= 128 || DIGITS[c] < 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static int digit(int c, int index) {
+		int value = c < 128 ? DIGITS[c] : -1;
+		if (value < 0)
+			throw new IllegalArgumentException("Invalid Base45 character at index " + index);
+		return value;
+	}
+}
@@ -0,0 +1,113 @@
+package co.entomo.gdhcn.hcert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.upokecenter.cbor.CBORObject;
+import com.upokecenter.cbor.CBORType;
+
+import co.entomo.gdhcn.vo.CertificatePayload;
+import co.entomo.gdhcn.vo.HealthCertificate;
+import co.entomo.gdhcn.vo.SmartHealthLink;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Maps the CWT claims of a health certificate between CBOR and the value objects
+ * without going through JSON text. Claims are written under their integer labels
+ * and read under either their integer labels or, for certificates issued before
+ * integer labels were used, their stringified labels.
+ */
+public final class CwtClaims {
+
+	public static final int ISS = 1;
+	public static final int EXP = 4;
+	public static final int IAT = 6;
+	public static final int HCERT = -260;
+	public static final int HEALTH_LINKS = 5;
+	public static final String SHLINK_URL = "u";
+
+	private CwtClaims() {
+	}
+
+	/**
+	 * Maps a decoded CWT claims map to a {@link CertificatePayload}.
+	 *
+	 * @param claims the COSE payload decoded as CBOR.
+	 * @return the certificate payload.
+	 * @throws IllegalArgumentException if the payload is not a map or a claim has an unexpected type.
+	 */
+	public static CertificatePayload decode(CBORObject claims) {
+		if (claims.getType() != CBORType.Map)
+			throw new IllegalArgumentException("CWT claims are not a CBOR map");
+		CertificatePayload payload = new CertificatePayload();
+		CBORObject iss = claim(claims, ISS);
+		if (iss != null)
+			payload.setIss(iss.AsString());
+		CBORObject exp = claim(claims, EXP);
+		if (exp != null)
+			payload.setExp(exp.AsInt64Value());
+		CBORObject iat = claim(claims, IAT);
+		if (iat != null)
+			payload.setIat(iat.AsInt64Value());
+		CBORObject hcert = claim(claims, HCERT);
+		if (hcert != null)
+			payload.setHealthCertificate(decodeHealthCertificate(hcert));
+		return payload;
+	}
+
+	/**
+	 * Builds the CWT claims map of a {@link CertificatePayload} with integer claim labels.
+	 *
+	 * @param payload the certificate payload.
+	 * @return the claims map, ready to be encoded as the COSE payload.
+	 */
+	public static CBORObject encode(CertificatePayload payload) {
+		CBORObject claims = CBORObject.NewMap();
+		if (payload.getIss() != null)
+			claims.Add(ISS, payload.getIss());
+		claims.Add(EXP, payload.getExp());
+		claims.Add(IAT, payload.getIat());
+		if (payload.getHealthCertificate() != null)
+			claims.Add(HCERT, encodeHealthCertificate(payload.getHealthCertificate()));
+		return claims;
+	}
+
+	private static CBORObject encodeHealthCertificate(HealthCertificate healthCertificate) {
+		CBORObject hcert = CBORObject.NewMap();
+		if (healthCertificate.getHealthLinks() != null) {
+			CBORObject links = CBORObject.NewArray();
+			for (SmartHealthLink link : healthCertificate.getHealthLinks()) {
+				CBORObject entry = CBORObject.NewMap();
+				if (link.getShLink() != null)
+					entry.Add(SHLINK_URL, link.getShLink());
+				links.Add(entry);
+			}
+			hcert.Add(HEALTH_LINKS, links);
+		}
+		return hcert;
+	}
+
+	private static HealthCertificate decodeHealthCertificate(CBORObject hcert) {
+		if (hcert.getType() != CBORType.Map)
+			throw new IllegalArgumentException("hcert claim is not a CBOR map");
+		HealthCertificate healthCertificate = new HealthCertificate();
+		CBORObject links = claim(hcert, HEALTH_LINKS);
+		if (links != null) {
+			if (links.getType() != CBORType.Array)
+				throw new IllegalArgumentException("Health links are not a CBOR array");
+			List<SmartHealthLink> healthLinks = new ArrayList<>(links.size());
+			for (int i = 0; i < links.size(); i++) {
+				CBORObject url = links.get(i).get(SHLINK_URL);
+				healthLinks.add(new SmartHealthLink(url == null ? null : url.AsString()));
+			}
+			healthCertificate.setHealthLinks(healthLinks);
+		}
+		return healthCertificate;
+	}
+
+	private static CBORObject claim(CBORObject map, int label) {
+		CBORObject value = map.get(CBORObject.FromObject(label));
+		return value != null ? value : map.get(String.valueOf(label));
+	}
+}
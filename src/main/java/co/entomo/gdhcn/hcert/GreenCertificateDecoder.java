@@ -1,7 +1,5 @@
 package co.entomo.gdhcn.hcert;
 
-import static org.apache.commons.compress.utils.IOUtils.toByteArray;
-
 import COSE.CoseException;
 import COSE.KeyKeys;
 import COSE.Message;
@@ -11,19 +9,25 @@ import COSE.Sign1Message;
 import co.entomo.gdhcn.exceptions.GdhcnValidationException;
 
 import com.upokecenter.cbor.CBORObject;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.interfaces.ECPublicKey;
 import java.security.spec.ECPoint;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
-import nl.minvws.encoding.Base45;
 import org.apache.commons.compress.compressors.CompressorException;
-import org.apache.commons.compress.compressors.CompressorInputStream;
-import org.apache.commons.compress.compressors.CompressorStreamFactory;
 public class GreenCertificateDecoder {
 
+  /** Largest inflated COSE message accepted by default; real payloads are a few hundred bytes. */
+  public static final int DEFAULT_MAX_COSE_BYTES = 64 * 1024;
+
+  private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+  private static final ThreadLocal<byte[]> INFLATE_BUFFER =
+          ThreadLocal.withInitial(() -> new byte[DEFAULT_MAX_COSE_BYTES + 1]);
+
   private final OneKey publicKey;
 
   public GreenCertificateDecoder(OneKey publicKey) {
@@ -45,8 +49,7 @@ public class GreenCertificateDecoder {
     if(!base45String.startsWith("HC1:"))
       throw new RuntimeException("Base45 string not valid according to specification");
 
-    base45String = base45String.substring(4);
-    byte[] decodedBytes = Base45.getDecoder().decode(base45String);
+    byte[] decodedBytes = Base45Codec.decode(base45String, 4, base45String.length());
 
     byte[] coseBytes = getCoseBytes(decodedBytes);
 
@@ -69,14 +72,67 @@ public class GreenCertificateDecoder {
   }
 
   public static byte[] getCoseBytes(byte[] decodedBytes) throws CompressorException, IOException {
+    return getCoseBytes(decodedBytes, DEFAULT_MAX_COSE_BYTES);
+  }
 
-    CompressorInputStream compressedStream = new CompressorStreamFactory()
-            .createCompressorInputStream(CompressorStreamFactory.DEFLATE,
-                    new ByteArrayInputStream(decodedBytes));
+  /**
+   * Inflates a zlib compressed payload, refusing to produce more than {@code maxBytes}.
+   * Uses an {@link Inflater} and output buffer kept per thread, so a decompression
+   * bomb is rejected after at most {@code maxBytes} of work and nothing but the
+   * result is allocated.
+   *
+   * @param decodedBytes the Base45 decoded payload
+   * @param maxBytes the largest accepted inflated size
+   * @return the COSE bytes
+   * @throws CompressorException if the payload is not a complete zlib stream or inflates beyond {@code maxBytes}
+   */
+  public static byte[] getCoseBytes(byte[] decodedBytes, int maxBytes) throws CompressorException {
+    return getCoseBytes(decodedBytes, 0, decodedBytes.length, maxBytes);
+  }
 
-    return toByteArray(compressedStream);
+  /**
+   * Inflates {@code length} bytes of {@code src} from {@code offset}, refusing to produce more than {@code maxBytes}.
+   *
+   * @see #getCoseBytes(byte[], int)
+   */
+  public static byte[] getCoseBytes(byte[] src, int offset, int length, int maxBytes) throws CompressorException {
+    Inflater inflater = INFLATER.get();
+    byte[] buffer = INFLATE_BUFFER.get();
+    if (buffer.length < maxBytes + 1) {
+      buffer = new byte[maxBytes + 1];
+      INFLATE_BUFFER.set(buffer);
+    }
+    int inflatedLength = 0;
+    try {
+      inflater.setInput(src, offset, length);
+      while (!inflater.finished()) {
+        int inflated = inflater.inflate(buffer, inflatedLength, maxBytes + 1 - inflatedLength);
+        inflatedLength += inflated;
+        if (inflatedLength > maxBytes)
+          throw new CompressorException("Inflated payload exceeds " + maxBytes + " bytes");
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+          throw new CompressorException("Truncated or unsupported deflate stream");
+      }
+    } catch (DataFormatException e) {
+      throw new CompressorException("Invalid deflate stream", e);
+    } finally {
+      inflater.reset();
+    }
+    return Arrays.copyOf(buffer, inflatedLength);
   }
   public boolean validate(Sign1Message msg){
+      return validate(msg, publicKey);
+  }
+
+  /**
+   * Verifies the signature of a COSE_Sign1 message with an already parsed key,
+   * without building a decoder per message.
+   *
+   * @param msg the decoded COSE_Sign1 message
+   * @param publicKey the DSC public key
+   * @return true if the signature is valid
+   */
+  public static boolean validate(Sign1Message msg, OneKey publicKey){
       try {
           return msg.validate(publicKey);
       } catch (CoseException e) {
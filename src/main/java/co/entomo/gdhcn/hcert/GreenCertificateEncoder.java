@@ -1,12 +1,12 @@
 package co.entomo.gdhcn.hcert;
 
 import COSE.*;
+import co.entomo.gdhcn.vo.CertificatePayload;
 import com.upokecenter.cbor.CBORObject;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorOutputStream;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 
-import nl.minvws.encoding.Base45;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -31,8 +31,23 @@ public class GreenCertificateEncoder {
      * @throws IOException
      */
     public String encode(String json) throws CoseException, CompressorException, IOException {
+        return encodeCbor(getCborBytes(json));
+    }
+
+    /**
+     * Encodes a certificate payload straight to CBOR with integer claim labels -> COSE -> Deflate -> BASE45
+     *
+     * @param payload
+     * @return
+     * @throws CoseException
+     * @throws CompressorException
+     * @throws IOException
+     */
+    public String encode(CertificatePayload payload) throws CoseException, CompressorException, IOException {
+        return encodeCbor(CwtClaims.encode(payload).EncodeToBytes());
+    }
 
-        byte[] cborBytes = getCborBytes(json);
+    private String encodeCbor(byte[] cborBytes) throws CoseException, CompressorException, IOException {
 
         byte[] coseBytes = getCOSEBytes(cborBytes);
 
@@ -43,7 +58,7 @@ public class GreenCertificateEncoder {
 
     private String getBase45(byte[] deflateBytes) {
 
-        return "HC1:" + Base45.getEncoder().encodeToString(deflateBytes);
+        return "HC1:" + Base45Codec.encodeToString(deflateBytes);
     }
 
     private byte[] getDeflateBytes(byte[] messageBytes) throws CompressorException, IOException {
@@ -0,0 +1,19 @@
+package co.entomo.gdhcn.hcert;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * @author Uday Matta
+ * @organization entomo Labs
+ * Immutable, ready-to-use signing material for issuance: the issuing country,
+ * the DSC key identifier and an encoder holding the parsed DSC private key.
+ */
+@Getter
+@AllArgsConstructor
+public final class SigningContext {
+
+    private final String issuer;
+    private final String kid;
+    private final GreenCertificateEncoder encoder;
+}
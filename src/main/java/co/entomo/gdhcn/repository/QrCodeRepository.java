@@ -6,7 +6,10 @@ import co.entomo.gdhcn.entity.QrCode;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.Optional;
+import java.util.Set;
 /**
  *
  *  @author Uday Matta
@@ -27,4 +30,14 @@ public interface QrCodeRepository extends JpaRepository<QrCode, String> {
     //Optional<QrCode> findByManifestIdAndPassCodeAndIsAccessed(String manifestId, String passCode, Boolean accessed);
 
     Optional<QrCode> findByManifestId(String manifestId);
+
+    /**
+     * Finds which of the given {@link QrCode} IDs exist and have not expired.
+     *
+     * @param ids the IDs to check.
+     * @param now the instant against which expiry is checked.
+     * @return the IDs of the {@link QrCode} entities that exist and do not expire before {@code now}.
+     */
+    @Query("select q.id from QrCode q where q.id in :ids and (q.expiresOn is null or q.expiresOn > :now)")
+    Set<String> findUnexpiredIds(@Param("ids") Collection<String> ids, @Param("now") Date now);
 }
@@ -6,6 +6,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Date;
+
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 
 /**
  * @organization Entomo Labs
@@ -32,6 +36,16 @@ public interface GdhcnFileSystem
      * @throws IOException if an I/O error occurs during the upload process.
      */
     public void uploadJson(String fileName, File file) throws IOException;
+    /**
+     * Uploads a JSON file to the file system while it is read from a stream,
+     * without holding the whole content in memory.
+     *
+     * @param fileName      the name of the file to be uploaded.
+     * @param content       the content of the file; it is read to its end but not closed.
+     * @param contentLength the number of bytes the stream holds.
+     * @throws IOException if reading the stream or writing the file fails; no file is left behind.
+     */
+    public void uploadJson(String fileName, InputStream content, long contentLength) throws IOException;
     /**
      * Downloads a JSON file from the file system using the provided JSON file ID.
      *
@@ -39,6 +53,39 @@ public interface GdhcnFileSystem
      * @return an InputStream for reading the contents of the JSON file.
      */
     public InputStream downloadJson(String jsonId) throws FileNotFoundException;
+    /**
+     * Opens a JSON file for streaming to a client without reading it into memory.
+     * Implementations that know the size of the file report it through
+     * {@link Resource#contentLength()} so that it is sent as Content-Length.
+     *
+     * @param jsonId the ID of the JSON file to be downloaded.
+     * @return a {@link Resource} over the contents of the JSON file.
+     * @throws IOException if the file does not exist or cannot be opened.
+     */
+    public default Resource downloadResource(String jsonId) throws IOException {
+        return new InputStreamResource(downloadJson(jsonId));
+    }
+    /**
+     * Opens the JSON file of a QR code whose expiry the caller already knows.
+     * Implementations that cache files keep them no longer than that expiry;
+     * the others open the file as {@link #downloadResource(String)} does.
+     *
+     * @param jsonId    the ID of the JSON file to be downloaded.
+     * @param expiresOn the expiry of the QR code, or {@code null} if it does not expire.
+     * @return a {@link Resource} over the contents of the JSON file.
+     * @throws IOException if the file does not exist or cannot be opened.
+     */
+    public default Resource downloadResource(String jsonId, Date expiresOn) throws IOException {
+        return downloadResource(jsonId);
+    }
+    /**
+     * Deletes a JSON file from the file system, such as one whose QR code could not be saved.
+     * Deleting a file that does not exist does nothing.
+     *
+     * @param fileName the name of the file to be deleted.
+     * @throws IOException if an I/O error occurs while deleting the file.
+     */
+    public void deleteJson(String fileName) throws IOException;
     /**
      * Retrieves the file system path of the file with the provided name.
      *
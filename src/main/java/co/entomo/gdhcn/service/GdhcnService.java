@@ -1,6 +1,14 @@
 package co.entomo.gdhcn.service;
 
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.core.io.Resource;
+
 import co.entomo.gdhcn.exceptions.GdhcnValidationException;
+import co.entomo.gdhcn.vo.DocumentIssuanceResponse;
+import co.entomo.gdhcn.vo.IssuanceResult;
 import co.entomo.gdhcn.vo.ManifestRequest;
 import co.entomo.gdhcn.vo.ManifestResponse;
 import co.entomo.gdhcn.vo.QrCodeRequest;
@@ -26,6 +34,31 @@ public interface GdhcnService {
 	 */
 	String vshcIssuance(QrCodeRequest qrCodeRequest) throws GdhcnValidationException;
 
+	/**
+	 * Issues QR codes for a batch of {@link QrCodeRequest}s. Payloads are signed
+	 * and files written in parallel, and the rows are persisted in one batch
+	 * in between; an item that fails leaves no row or file behind.
+	 *
+	 * @param qrCodeRequests the requests to issue.
+	 * @return one {@link IssuanceResult} per request, in input order.
+	 * @throws GdhcnValidationException if the batch is too large.
+	 */
+	List<IssuanceResult> vshcIssuanceBatch(List<QrCodeRequest> qrCodeRequests) throws GdhcnValidationException;
+
+	/**
+	 * Issues a VSHC for a FHIR document read from a stream. The document is
+	 * written to storage while it is read, capped in size and digested on the
+	 * way, and is never parsed.
+	 *
+	 * @param qrCodeRequest the issuance metadata; its {@code jsonContent} is ignored.
+	 * @param document      the FHIR document.
+	 * @param contentLength the size of the document in bytes.
+	 * @return the issued QR code with the size and digest of the stored document.
+	 * @throws GdhcnValidationException if the document is too large or cannot be stored.
+	 */
+	DocumentIssuanceResponse vshcIssuance(QrCodeRequest qrCodeRequest, InputStream document, long contentLength)
+			throws GdhcnValidationException;
+
 	/**
 	 * Validates the encoded content of a QR code.
 	 *
@@ -38,6 +71,29 @@ public interface GdhcnService {
 	 */
 	ValidateCwtResponse vshcValidation(String qrCodeEncodedContent) throws GdhcnValidationException;
 
+	/**
+	 * Validates the encoded content of a QR code without blocking the calling
+	 * thread. The DSC key lookup starts as soon as the issuer and KID are decoded,
+	 * while the Smart Health Link is decoded and checked in parallel.
+	 *
+	 * @param qrCodeEncodedContent the encoded content of the QR code to be
+	 *                             validated.
+	 * @return a future of the {@link ValidateCwtResponse}, completed once every
+	 *         step has an outcome.
+	 */
+	CompletableFuture<ValidateCwtResponse> vshcValidationAsync(String qrCodeEncodedContent);
+
+	/**
+	 * Validates a batch of QR code contents in parallel. Each distinct issuer and
+	 * KID is resolved once for the whole batch. Items not validated within the
+	 * batch time budget are returned with all steps pending.
+	 *
+	 * @param qrCodeEncodedContents the encoded QR code contents to validate.
+	 * @return one {@link ValidateCwtResponse} per content, in input order.
+	 * @throws GdhcnValidationException if the batch is too large.
+	 */
+	List<ValidateCwtResponse> vshcValidationBatch(List<String> qrCodeEncodedContents) throws GdhcnValidationException;
+
 	/**
 	 * Retrieves a manifest based on the provided {@link ManifestRequest} and JSON
 	 * identifier.
@@ -64,10 +120,11 @@ public interface GdhcnService {
 	String downloadJWEJson(String manifestId);
 
 	/**
-	 * Downloads standard JSON data (not JWE) based on the provided JSON identifier.
+	 * Opens standard JSON data (not JWE) based on the provided JSON identifier,
+	 * for streaming to the client without reading it into memory.
 	 *
 	 * @param jsonId the identifier for the JSON data to be downloaded.
-	 * @return a {@code String} representing the JSON data.
+	 * @return a {@link Resource} over the JSON data, {@code null} if there is none.
 	 */
-	String downloadJson(String jsonId) throws GdhcnValidationException;
+	Resource downloadJson(String jsonId) throws GdhcnValidationException;
 }
@@ -4,13 +4,18 @@ package co.entomo.gdhcn.service.impl;/**
 
 import co.entomo.gdhcn.service.GdhcnFileSystem;
 import co.entomo.gdhcn.util.AmazonClientUtil;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.S3Object;
 import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.InputStream;
 
 /**
@@ -58,6 +63,18 @@ public class AwsFileSystem implements GdhcnFileSystem
           amazonClientUtil.uploadFileToBucket(fileName,file,jsonFolder);
      }
 
+     /**
+      * Uploads a JSON file to the AWS S3 bucket while it is read from a stream.
+      *
+      * @param fileName      the name of the file to be uploaded.
+      * @param content       the content of the file.
+      * @param contentLength the number of bytes the stream holds.
+      */
+     @Override
+     public void uploadJson(String fileName, InputStream content, long contentLength) {
+          amazonClientUtil.uploadFileToBucket(fileName, content, contentLength, jsonFolder);
+     }
+
      /**
       * Downloads a JSON file from the AWS S3 bucket using the provided JSON file ID.
       *
@@ -69,6 +86,44 @@ public class AwsFileSystem implements GdhcnFileSystem
           return amazonClientUtil.getFileInputStream(jsonId,jsonFolder);
      }
 
+     /**
+      * Opens a JSON file of the AWS S3 bucket for streaming. The object content is
+      * piped through as it arrives from S3 and its length is taken from the
+      * object metadata.
+      *
+      * @param jsonId the ID of the JSON file to be downloaded.
+      * @return a {@link Resource} over the S3 object content.
+      * @throws FileNotFoundException if the object does not exist.
+      */
+     @Override
+     public Resource downloadResource(String jsonId) throws FileNotFoundException {
+          S3Object object;
+          try {
+               object = amazonClientUtil.getObject(jsonId, jsonFolder);
+          } catch (AmazonS3Exception e) {
+               if (e.getStatusCode() == 404)
+                    throw new FileNotFoundException(jsonId);
+               throw e;
+          }
+          long contentLength = object.getObjectMetadata().getContentLength();
+          return new InputStreamResource(object.getObjectContent()) {
+               @Override
+               public long contentLength() {
+                    return contentLength;
+               }
+          };
+     }
+
+     /**
+      * Deletes a JSON file from the AWS S3 bucket.
+      *
+      * @param fileName the name of the file to be deleted.
+      */
+     @Override
+     public void deleteJson(String fileName) {
+          amazonClientUtil.deleteFileFromBucket(fileName, jsonFolder);
+     }
+
      /**
       * Retrieves the full path of the file in the AWS S3 bucket using the provided file name.
       *
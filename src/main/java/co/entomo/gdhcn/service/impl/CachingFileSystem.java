@@ -0,0 +1,310 @@
+package co.entomo.gdhcn.service.impl;/**
+ * @author Uday Matta
+ */
+
+import co.entomo.gdhcn.service.GdhcnFileSystem;
+import co.entomo.gdhcn.util.ByteBufferInputStream;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache in front of another GdhcnFileSystem.
+ *
+ * Downloaded JSON files of up to {@code maxEntryBytes} are kept in memory, on
+ * the heap or in direct buffers, until their total size reaches
+ * {@code maxBytes}. Room is made with the Greedy-Dual-Size-Frequency policy:
+ * the file evicted first is the one with the fewest hits per byte, aged by the
+ * priority of the last file evicted, so a single large file does not push out
+ * many small hot ones and formerly hot files do not stay forever.
+ *
+ * Files are only read into the cache through
+ * {@link #downloadResource(String, Date)}, whose caller passes the expiry of
+ * the QR code it has already loaded; an entry lives for the configured TTL but
+ * never beyond that expiry, and files of expired QR codes are not cached.
+ * Downloads without a known expiry are served from the cache but are otherwise
+ * streamed from the delegate. Expired entries are dropped before any live one is evicted to make room.
+ * Uploads through this cache drop the cached copy.
+ *
+ * @author Uday Matta
+ * @organization entomo Labs
+ */
+public class CachingFileSystem implements GdhcnFileSystem
+{
+    private final GdhcnFileSystem delegate;
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final long ttl;
+    private final boolean offHeap;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> evictionOrder = new TreeSet<>(
+            Comparator.comparingDouble((Entry e) -> e.priority).thenComparingLong(e -> e.sequence));
+    private final TreeSet<Entry> expiryOrder = new TreeSet<>(
+            Comparator.comparingLong((Entry e) -> e.expiresAt).thenComparing(e -> e.key));
+    private double clock;
+    private long sequence;
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param delegate         the file system whose downloads are cached.
+     * @param meterRegistry    the registry the cache metrics are registered with.
+     * @param maxBytes         the total size of the cached files.
+     * @param maxEntryBytes    the size of the largest file cached; larger files are streamed from the delegate.
+     * @param ttl              the longest time a file is cached, in seconds.
+     * @param offHeap          whether cached files are held in direct buffers outside the heap.
+     */
+    public CachingFileSystem(GdhcnFileSystem delegate, MeterRegistry meterRegistry, long maxBytes, int maxEntryBytes,
+                             long ttl, boolean offHeap) {
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(Math.min(maxEntryBytes, maxBytes), Integer.MAX_VALUE - 1);
+        this.ttl = ttl;
+        this.offHeap = offHeap;
+        FunctionCounter.builder("gdhcn.file.cache.requests", hits, AtomicLong::doubleValue)
+                .tag("result", "hit").description("File cache hits").register(meterRegistry);
+        FunctionCounter.builder("gdhcn.file.cache.requests", misses, AtomicLong::doubleValue)
+                .tag("result", "miss").description("File cache misses").register(meterRegistry);
+        FunctionCounter.builder("gdhcn.file.cache.evictions", evictions, AtomicLong::doubleValue)
+                .description("Files evicted from the file cache to make room").register(meterRegistry);
+        Gauge.builder("gdhcn.file.cache.size", this, CachingFileSystem::size).baseUnit("bytes")
+                .description("Total size of the cached files").register(meterRegistry);
+    }
+
+    @Override
+    public void uploadJson(String fileName, String fileContent) throws IOException {
+        delegate.uploadJson(fileName, fileContent);
+        invalidate(fileName);
+    }
+
+    @Override
+    public void uploadJson(String fileName, File file) throws IOException {
+        delegate.uploadJson(fileName, file);
+        invalidate(fileName);
+    }
+
+    @Override
+    public void uploadJson(String fileName, InputStream content, long contentLength) throws IOException {
+        delegate.uploadJson(fileName, content, contentLength);
+        invalidate(fileName);
+    }
+
+    /**
+     * Downloads a JSON file from the cache, reading it through from the delegate on a miss.
+     *
+     * @param jsonId the ID of the JSON file to be downloaded.
+     * @return an InputStream for reading the contents of the JSON file.
+     * @throws FileNotFoundException if the file does not exist.
+     */
+    @Override
+    public InputStream downloadJson(String jsonId) throws FileNotFoundException {
+        try {
+            return downloadResource(jsonId).getInputStream();
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Opens a JSON file from the cache, streaming it from the delegate on a miss
+     * since its expiry is not known.
+     *
+     * @param jsonId the ID of the JSON file to be downloaded.
+     * @return a {@link Resource} over the JSON file.
+     * @throws IOException if the file does not exist or cannot be read.
+     */
+    @Override
+    public Resource downloadResource(String jsonId) throws IOException {
+        ByteBuffer content = get(jsonId);
+        if (content != null) {
+            hits.incrementAndGet();
+            return resource(content);
+        }
+        misses.incrementAndGet();
+        return delegate.downloadResource(jsonId);
+    }
+
+    /**
+     * Opens a JSON file from the cache, reading it through from the delegate on a miss.
+     *
+     * @param jsonId    the ID of the JSON file to be downloaded.
+     * @param expiresOn the expiry of the QR code, or {@code null} if it does not expire.
+     * @return a {@link Resource} over the JSON file.
+     * @throws IOException if the file does not exist or cannot be read.
+     */
+    @Override
+    public Resource downloadResource(String jsonId, Date expiresOn) throws IOException {
+        ByteBuffer content = get(jsonId);
+        if (content != null) {
+            hits.incrementAndGet();
+            return resource(content);
+        }
+        misses.incrementAndGet();
+        Resource resource = delegate.downloadResource(jsonId, expiresOn);
+        if (knownLength(resource) > maxEntryBytes)
+            return resource;
+        InputStream is = resource.getInputStream();
+        byte[] head = is.readNBytes(maxEntryBytes + 1);
+        if (head.length > maxEntryBytes)
+            return new InputStreamResource(new SequenceInputStream(new ByteArrayInputStream(head), is));
+        is.close();
+        long expiresAt = expiresAt(expiresOn);
+        if (expiresAt <= System.currentTimeMillis())
+            return resource(ByteBuffer.wrap(head));
+        return resource(put(jsonId, head, expiresAt));
+    }
+
+    @Override
+    public void deleteJson(String fileName) throws IOException {
+        invalidate(fileName);
+        delegate.deleteJson(fileName);
+    }
+
+    @Override
+    public String getPath(String fileName) {
+        return delegate.getPath(fileName);
+    }
+
+    /**
+     * Drops the cached copy of a file.
+     *
+     * @param fileName the name of the file.
+     */
+    public synchronized void invalidate(String fileName) {
+        Entry entry = entries.remove(fileName);
+        if (entry != null)
+            remove(entry);
+    }
+
+    private synchronized ByteBuffer get(String fileName) {
+        Entry entry = entries.get(fileName);
+        if (entry == null)
+            return null;
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(fileName);
+            remove(entry);
+            return null;
+        }
+        evictionOrder.remove(entry);
+        entry.frequency++;
+        entry.priority = clock + (double) entry.frequency / entry.size();
+        entry.sequence = ++sequence;
+        evictionOrder.add(entry);
+        return entry.content.duplicate();
+    }
+
+    private ByteBuffer put(String fileName, byte[] content, long expiresAt) {
+        ByteBuffer buffer;
+        if (offHeap) {
+            buffer = ByteBuffer.allocateDirect(content.length).put(content).flip();
+        } else {
+            buffer = ByteBuffer.wrap(content);
+        }
+        Entry entry = new Entry(fileName, buffer.asReadOnlyBuffer(), expiresAt);
+        synchronized (this) {
+            invalidate(fileName);
+            if (bytes + entry.size() > maxBytes)
+                purgeExpired(System.currentTimeMillis());
+            while (bytes + entry.size() > maxBytes && !evictionOrder.isEmpty()) {
+                Entry victim = evictionOrder.first();
+                entries.remove(victim.key);
+                remove(victim);
+                clock = victim.priority;
+                evictions.incrementAndGet();
+            }
+            entry.frequency = 1;
+            entry.priority = clock + 1.0 / entry.size();
+            entry.sequence = ++sequence;
+            entries.put(fileName, entry);
+            evictionOrder.add(entry);
+            expiryOrder.add(entry);
+            bytes += entry.size();
+        }
+        return entry.content.duplicate();
+    }
+
+    /**
+     * Drops the entries that expired before {@code now}, without aging the eviction clock.
+     */
+    private void purgeExpired(long now) {
+        while (!expiryOrder.isEmpty() && expiryOrder.first().expiresAt <= now) {
+            Entry entry = expiryOrder.first();
+            entries.remove(entry.key);
+            remove(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        evictionOrder.remove(entry);
+        expiryOrder.remove(entry);
+        bytes -= entry.size();
+    }
+
+    private synchronized long size() {
+        return bytes;
+    }
+
+    /**
+     * Computes until when a file may be cached from the expiry of its QR code.
+     */
+    private long expiresAt(Date expiresOn) {
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+        return expiresOn == null ? expiresAt : Math.min(expiresAt, expiresOn.getTime());
+    }
+
+    /**
+     * @return the length of a resource if it can be told without reading it, or -1.
+     */
+    private static long knownLength(Resource resource) {
+        // A plain InputStreamResource counts its length by consuming the stream
+        if (resource.getClass() == InputStreamResource.class)
+            return -1;
+        try {
+            return resource.contentLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static Resource resource(ByteBuffer content) {
+        int contentLength = content.remaining();
+        return new InputStreamResource(new ByteBufferInputStream(content)) {
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+        };
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final ByteBuffer content;
+        private final long expiresAt;
+        private int frequency;
+        private double priority;
+        private long sequence;
+
+        private Entry(String key, ByteBuffer content, long expiresAt) {
+            this.key = key;
+            this.content = content;
+            this.expiresAt = expiresAt;
+        }
+
+        private int size() {
+            return Math.max(1, content.capacity());
+        }
+    }
+}
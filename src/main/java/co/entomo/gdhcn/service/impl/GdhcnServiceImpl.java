@@ -5,40 +5,55 @@ import co.entomo.gdhcn.entity.IpsFile;
 import co.entomo.gdhcn.entity.QrCode;
 import co.entomo.gdhcn.exceptions.GdhcnIPSAlreadyAccessedException;
 import co.entomo.gdhcn.exceptions.GdhcnQRCodeExpiredException;
+import co.entomo.gdhcn.exceptions.GdhcnTrustListUnavailableException;
 import co.entomo.gdhcn.entity.RecipientKey;
 import co.entomo.gdhcn.exceptions.GdhcnValidationException;
-import co.entomo.gdhcn.hcert.GreenCertificateDecoder;
-import co.entomo.gdhcn.hcert.GreenCertificateEncoder;
+import co.entomo.gdhcn.hcert.SigningContext;
 import co.entomo.gdhcn.repository.IpsFileRepository;
 import co.entomo.gdhcn.repository.QrCodeRepository;
 import co.entomo.gdhcn.repository.RecipientKeyRepository;
 import co.entomo.gdhcn.service.GdhcnFileSystem;
 import co.entomo.gdhcn.service.GdhcnService;
-import co.entomo.gdhcn.util.CertificateUtils;
+import co.entomo.gdhcn.util.BoundedDigestInputStream;
+import co.entomo.gdhcn.util.DscSigningKeyManager;
 import co.entomo.gdhcn.util.HttpClientUtils;
+import co.entomo.gdhcn.validation.SigningKeyResolver;
+import co.entomo.gdhcn.validation.ValidationPipeline;
 import co.entomo.gdhcn.vo.*;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import nl.minvws.encoding.Base45;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.security.PrivateKey;
-import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author Uday Matta
@@ -50,14 +65,8 @@ public class GdhcnServiceImpl implements GdhcnService {
 
     @Value("${gdhcn.baseUrl}")
     private String baseUrl;
-    @Value("${tng.country}")
-    private String countryCode;
-    @Value("${tng.dsc.privateKey}")
-    private String dscKeyPath;
     @Value("${ips.shlink.expiry}")
     private long ipsShLinkExpiry;
-    @Value("${tng.dsc.privateKey.kid}")
-    private String kidId;
     @Value("${recipient.keyDurationMinutes}")
     private int keyDurationMinutes;
     @Autowired
@@ -65,69 +74,66 @@ public class GdhcnServiceImpl implements GdhcnService {
     @Autowired
     private IpsFileRepository ipsFileRepository;
     @Autowired
-    private CertificateUtils certificateUtils;
-    @Autowired
     private HttpClientUtils httpClientUtils;
     @Autowired
+    private DscSigningKeyManager dscSigningKeyManager;
+    @Autowired
+    private ValidationPipeline validationPipeline;
+    @Autowired
     private ModelMapper modelMapper;
 
     @Autowired
     private GdhcnFileSystem gdhcnFileSystem;
     private ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    @Value("${gdhcn.batch.maxSize:500}")
+    private int maxBatchSize;
+    @Value("${gdhcn.batch.timeout:10000}")
+    private long batchTimeout;
+    @Value("${gdhcn.batch.threads:0}")
+    private int batchThreads;
+    @Value("${gdhcn.batch.queueCapacity:1000}")
+    private int batchQueueCapacity;
+    @Value("${gdhcn.issuance.maxDocumentBytes:10485760}")
+    private long maxDocumentBytes;
+    private ExecutorService issuanceExecutor;
+    private ExecutorService validationExecutor;
 
-    @Override
-    public String vshcIssuance(QrCodeRequest qrCodeRequest) throws GdhcnValidationException {
-        try {
-            byte[] key = generateRandomSequence();
-            String uuid = UUID.randomUUID().toString();
-            String manifestId = Base64.getUrlEncoder().encodeToString(generateRandomSequence());
-            String fileName = uuid + ".json";
-            String jsonUrl = gdhcnFileSystem.getPath(fileName);
-            String shUrl = null;
-            if (StringUtils.hasLength(qrCodeRequest.getPassCode())) {
-                shUrl = baseUrl + "/v2/manifests/" + manifestId;
-            } else {
-                shUrl = baseUrl + "/v2/ips-json/" + manifestId;
-            }
-            SHLinkContent shLinkPayload = SHLinkContent.builder()
-                    .url(shUrl)
-                    .flag(qrCodeRequest.getPassCode() != null ? "P" : "U")
-                    .label("GDHCN Validator")
-                    .exp(qrCodeRequest.getExpiresOn() != null ? qrCodeRequest.getExpiresOn().getTime() : null)
-                    .key(Base64.getUrlEncoder().encodeToString(key))
-                    .build();
+    /**
+     * Starts one worker pool for batch issuance and one for batch validation, so
+     * that neither can starve the other. Each is sized to the available cores
+     * unless {@code gdhcn.batch.threads} is set, and queues at most
+     * {@code gdhcn.batch.queueCapacity} items; items beyond that are rejected.
+     */
+    @PostConstruct
+    void initializeBatchExecutors() {
+        int threads = batchThreads > 0 ? batchThreads : Runtime.getRuntime().availableProcessors();
+        issuanceExecutor = batchExecutor("gdhcn-batch-issuance-", threads);
+        validationExecutor = batchExecutor("gdhcn-batch-validation-", threads);
+    }
 
-            QrCode qrCode = modelMapper.map(qrCodeRequest, QrCode.class);
-            qrCode.setJsonUrl(jsonUrl);
-            qrCode.setManifestId(manifestId);
-            qrCode.setId(uuid);
-            qrCode.setKey(Base64.getUrlEncoder().encodeToString(key));
-            qrCode.setFlag(shLinkPayload.getFlag());
-            qrCodeRepository.save(qrCode);
-            gdhcnFileSystem.uploadJson(fileName, qrCodeRequest.getJsonContent());
-            String shLinkConsent = "shlink://" + Base64.getEncoder()
-                    .encodeToString(OBJECT_MAPPER.writeValueAsString(shLinkPayload).getBytes(StandardCharsets.UTF_8));
-
-            long expiredInMillies = new Date(Long.MAX_VALUE).getTime() / 1000L;
-            if (!ObjectUtils.isEmpty(shLinkPayload.getExp())) {
-                expiredInMillies = shLinkPayload.getExp() / 1000L;
-            }
+    private ExecutorService batchExecutor(String threadNamePrefix, int threads) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(batchQueueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
 
-            SmartHealthLink link = SmartHealthLink.builder().shLink(shLinkConsent).build();
-            List<SmartHealthLink> list = new ArrayList<SmartHealthLink>();
-            HealthCertificate hCert = HealthCertificate.builder().healthLinks(list).build();
-            list.add(link);
-            CertificatePayload payload = CertificatePayload.builder()
-                    .iat(System.currentTimeMillis())
-                    .iss(countryCode)
-                    .healthCertificate(hCert)
-                    .exp(expiredInMillies)
-                    .build();
+    @PreDestroy
+    void shutdownBatchExecutors() {
+        issuanceExecutor.shutdown();
+        validationExecutor.shutdown();
+    }
 
-            String payLoadJson = OBJECT_MAPPER.writeValueAsString(payload);
-            PrivateKey privateKey = certificateUtils.getPrivateKey(getPrivateDSCKeyContent(), countryCode);
-            OneKey cborPrivateKey = new OneKey(null, privateKey);
-            String encoded = new GreenCertificateEncoder(cborPrivateKey, kidId).encode(payLoadJson);
+    @Override
+    public String vshcIssuance(QrCodeRequest qrCodeRequest) throws GdhcnValidationException {
+        SigningContext signingContext = dscSigningKeyManager.getSigningContext(qrCodeRequest.getIssuer(),
+                qrCodeRequest.getKid());
+        try {
+            IssuanceItem item = prepareIssuance(qrCodeRequest, signingContext);
+            qrCodeRepository.save(item.qrCode());
+            gdhcnFileSystem.uploadJson(item.fileName(), item.jsonContent());
+            String encoded = signingContext.getEncoder().encode(item.payload());
             return encoded;
         } catch (JsonProcessingException e) {
             e.printStackTrace();
@@ -142,97 +148,326 @@ public class GdhcnServiceImpl implements GdhcnService {
     }
 
     @Override
-    public ValidateCwtResponse vshcValidation(String qrCodeEncodedContent) {
-        Map<Integer, StepStatus> response = getDefaultStatus();
-        SHLinkContent shLinkContent = null;
-        int step = 0;
+    public DocumentIssuanceResponse vshcIssuance(QrCodeRequest qrCodeRequest, InputStream document, long contentLength)
+            throws GdhcnValidationException {
+        if (contentLength > maxDocumentBytes)
+            throw new GdhcnValidationException("Document exceeds " + maxDocumentBytes + " bytes");
+        SigningContext signingContext = dscSigningKeyManager.getSigningContext(qrCodeRequest.getIssuer(),
+                qrCodeRequest.getKid());
         try {
-            log.info("qrCodeEncodedContent : " + qrCodeEncodedContent);
-            log.info("response : " + response);
-            if (!ObjectUtils.isEmpty(qrCodeEncodedContent)) {
-                qrCodeEncodedContent = qrCodeEncodedContent.substring(4);
-                byte[] decodedBytes = Base45.getDecoder().decode(qrCodeEncodedContent);
-                updateStatus(response, ++step, ValidationStatus.SUCCESS);
-                byte[] coseBytes = GreenCertificateDecoder.getCoseBytes(decodedBytes);
-                updateStatus(response, ++step, ValidationStatus.SUCCESS);
-                Sign1Message msg = (Sign1Message) Message.DecodeFromBytes(coseBytes, MessageTag.Sign1);
-                log.info("Sign1Message : " + msg.toString());
-                updateStatus(response, ++step, ValidationStatus.SUCCESS);
-                String json = GreenCertificateDecoder.getJsonString(msg.GetContent());
-                log.info("Json : " + json);
-                updateStatus(response, ++step, ValidationStatus.SUCCESS);
-                CertificatePayload certificatePayLoad = OBJECT_MAPPER.readValue(json, CertificatePayload.class);
-                updateStatus(response, ++step, ValidationStatus.SUCCESS);
-                log.info("Protected Header: " + msg.getProtectedAttributes());
-                String kid = msg.getProtectedAttributes().get(HeaderKeys.KID.AsCBOR()).ToObject(String.class);
-                GdhcnCertificateVO gdhcnCertificateVO = httpClientUtils.getGdhcnCertificate(certificatePayLoad.getIss(),
-                        kid);
-                if (gdhcnCertificateVO == null)
-                    throw new RuntimeException("Unable to Fetch GDHCN Certificate");
-                updateStatus(response, ++step, ValidationStatus.SUCCESS);
-                PublicKey publicKey = certificateUtils.getPublicKey(gdhcnCertificateVO.getCertificate());
-                OneKey oneKey = new OneKey(publicKey, null);
-                GreenCertificateDecoder decoder = new GreenCertificateDecoder(oneKey);
-                boolean status = decoder.validate(msg);
-                if (status)
-                    updateStatus(response, ++step, ValidationStatus.SUCCESS);
-                else
-                    throw new RuntimeException("Signature Validation failed");
-
-                String shLink = certificatePayLoad.getHealthCertificate().getHealthLinks().get(0).getShLink();
-                updateStatus(response, ++step, ValidationStatus.SUCCESS);
-                shLink = shLink.substring("shlink://".length());
-                log.info("shLink: " + shLink);
-                shLink = new String(Base64.getDecoder().decode(shLink));
-                log.info("shLink: " + shLink);
-                shLinkContent = OBJECT_MAPPER.readValue(shLink, SHLinkContent.class);
-
-                if (shLinkContent.getExp() != null) {
-                    Date expDate = new Date(shLinkContent.getExp());
-                    Date currentDate = new Date(System.currentTimeMillis());
-                    if (currentDate.after(expDate)) {
-                        shLinkContent = null;
-                        throw new RuntimeException("shlink expired");
-                    }
+            IssuanceItem item = prepareIssuance(qrCodeRequest, signingContext);
+            BoundedDigestInputStream content = new BoundedDigestInputStream(document, maxDocumentBytes, "SHA-256");
+            gdhcnFileSystem.uploadJson(item.fileName(), content, contentLength);
+            try {
+                qrCodeRepository.save(item.qrCode());
+            } catch (RuntimeException e) {
+                deleteQuietly(item.fileName());
+                throw e;
+            }
+            String sha256 = content.getDigest();
+            log.info("Stored document " + item.fileName() + ": " + content.getCount() + " bytes, sha256 " + sha256);
+            return DocumentIssuanceResponse.builder()
+                    .qrCode(signingContext.getEncoder().encode(item.payload()))
+                    .contentLength(content.getCount())
+                    .sha256(sha256)
+                    .build();
+        } catch (BoundedDigestInputStream.LimitExceededException e) {
+            throw new GdhcnValidationException(e.getMessage());
+        } catch (CoseException | CompressorException | IOException e) {
+            throw new GdhcnValidationException("Issuance failed", e);
+        }
+    }
+
+    @Override
+    public List<IssuanceResult> vshcIssuanceBatch(List<QrCodeRequest> qrCodeRequests) throws GdhcnValidationException {
+        if (qrCodeRequests.size() > maxBatchSize)
+            throw new GdhcnValidationException("Batch size exceeds " + maxBatchSize);
+        IssuanceItem[] items = new IssuanceItem[qrCodeRequests.size()];
+        SigningContext[] signingContexts = new SigningContext[qrCodeRequests.size()];
+        IssuanceResult[] results = new IssuanceResult[qrCodeRequests.size()];
+        for (int i = 0; i < items.length; i++) {
+            QrCodeRequest qrCodeRequest = qrCodeRequests.get(i);
+            try {
+                signingContexts[i] = dscSigningKeyManager.getSigningContext(qrCodeRequest.getIssuer(),
+                        qrCodeRequest.getKid());
+                items[i] = prepareIssuance(qrCodeRequest, signingContexts[i]);
+            } catch (GdhcnValidationException | JsonProcessingException e) {
+                results[i] = IssuanceResult.failed(i, e.getMessage());
+            }
+        }
+
+        // Items are signed in parallel, their rows saved in one JDBC batch, then their files written in parallel;
+        // rows whose file could not be written are deleted again, so a failed item leaves neither a row nor a file
+        String[] encoded = new String[items.length];
+        List<CompletableFuture<Void>> signatures = new ArrayList<>(items.length);
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] == null)
+                continue;
+            int index = i;
+            IssuanceItem item = items[i];
+            SigningContext signingContext = signingContexts[i];
+            signatures.add(runAsync(() -> {
+                try {
+                    encoded[index] = signingContext.getEncoder().encode(item.payload());
+                } catch (CoseException | CompressorException | IOException e) {
+                    throw new CompletionException(e);
                 }
-                updateStatus(response, ++step, ValidationStatus.SUCCESS);
+            }, issuanceExecutor).exceptionally(e -> {
+                results[index] = failed(index, e);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(signatures.toArray(new CompletableFuture[0])).join();
+
+        List<QrCode> qrCodes = new ArrayList<>(items.length);
+        for (int i = 0; i < items.length; i++) {
+            if (encoded[i] != null)
+                qrCodes.add(items[i].qrCode());
+        }
+        if (qrCodes.isEmpty())
+            return Arrays.asList(results);
+        try {
+            qrCodeRepository.saveAll(qrCodes);
+        } catch (RuntimeException e) {
+            // No file has been written yet, so a failed batch of rows leaves nothing behind
+            for (int i = 0; i < items.length; i++) {
+                if (encoded[i] != null)
+                    results[i] = failed(i, e);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            updateStatus(response, ++step, ValidationStatus.FAILED);
+            return Arrays.asList(results);
+        }
+
+        List<CompletableFuture<Void>> uploads = new ArrayList<>(qrCodes.size());
+        for (int i = 0; i < items.length; i++) {
+            if (encoded[i] == null)
+                continue;
+            int index = i;
+            IssuanceItem item = items[i];
+            uploads.add(runAsync(() -> {
+                try {
+                    gdhcnFileSystem.uploadJson(item.fileName(), item.jsonContent());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, issuanceExecutor).handle((ignored, e) -> {
+                results[index] = e == null ? IssuanceResult.success(index, encoded[index]) : failed(index, e);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0])).join();
+        List<QrCode> orphans = new ArrayList<>();
+        for (int i = 0; i < items.length; i++) {
+            if (encoded[i] != null && results[i].getStatus() != ValidationStatus.SUCCESS)
+                orphans.add(items[i].qrCode());
         }
-        return ValidateCwtResponse.builder()
-                .validationStatus(response)
-                .shLinkContent(shLinkContent)
+        if (!orphans.isEmpty())
+            deleteQuietly(orphans);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Runs a task of a batch, turning a rejection by its full executor into a failed future.
+     */
+    private static CompletableFuture<Void> runAsync(Runnable task, Executor executor) {
+        try {
+            return CompletableFuture.runAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Batch capacity exhausted"));
+        }
+    }
+
+    private static IssuanceResult failed(int index, Throwable e) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null)
+            cause = cause.getCause();
+        log.warn("Issuance of batch item " + index + " failed", cause);
+        return IssuanceResult.failed(index, cause.getMessage());
+    }
+
+    private void deleteQuietly(List<QrCode> qrCodes) {
+        try {
+            qrCodeRepository.deleteAll(qrCodes);
+        } catch (RuntimeException e) {
+            log.warn("Deleting " + qrCodes.size() + " QR codes of failed issuances failed", e);
+        }
+    }
+
+    private void deleteQuietly(String fileName) {
+        try {
+            gdhcnFileSystem.deleteJson(fileName);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Deleting " + fileName + " of a failed issuance failed", e);
+        }
+    }
+
+    /**
+     * Builds everything an issuance needs short of writing and signing it: the
+     * {@link QrCode} row, the IPS file name and content, and the CWT claims.
+     */
+    private IssuanceItem prepareIssuance(QrCodeRequest qrCodeRequest, SigningContext signingContext)
+            throws JsonProcessingException {
+        byte[] key = generateRandomSequence();
+        String uuid = UUID.randomUUID().toString();
+        String manifestId = Base64.getUrlEncoder().encodeToString(generateRandomSequence());
+        String fileName = uuid + ".json";
+        String jsonUrl = gdhcnFileSystem.getPath(fileName);
+        String shUrl = null;
+        if (StringUtils.hasLength(qrCodeRequest.getPassCode())) {
+            shUrl = baseUrl + "/v2/manifests/" + manifestId;
+        } else {
+            shUrl = baseUrl + "/v2/ips-json/" + manifestId;
+        }
+        SHLinkContent shLinkPayload = SHLinkContent.builder()
+                .url(shUrl)
+                .flag(qrCodeRequest.getPassCode() != null ? "P" : "U")
+                .label("GDHCN Validator")
+                .exp(qrCodeRequest.getExpiresOn() != null ? qrCodeRequest.getExpiresOn().getTime() : null)
+                .key(Base64.getUrlEncoder().encodeToString(key))
+                .build();
+
+        QrCode qrCode = modelMapper.map(qrCodeRequest, QrCode.class);
+        qrCode.setJsonUrl(jsonUrl);
+        qrCode.setManifestId(manifestId);
+        qrCode.setId(uuid);
+        qrCode.setKey(Base64.getUrlEncoder().encodeToString(key));
+        qrCode.setFlag(shLinkPayload.getFlag());
+        String shLinkConsent = "shlink://" + Base64.getEncoder()
+                .encodeToString(OBJECT_MAPPER.writeValueAsString(shLinkPayload).getBytes(StandardCharsets.UTF_8));
+
+        long expiredInMillies = new Date(Long.MAX_VALUE).getTime() / 1000L;
+        if (!ObjectUtils.isEmpty(shLinkPayload.getExp())) {
+            expiredInMillies = shLinkPayload.getExp() / 1000L;
+        }
+
+        SmartHealthLink link = SmartHealthLink.builder().shLink(shLinkConsent).build();
+        List<SmartHealthLink> list = new ArrayList<SmartHealthLink>();
+        HealthCertificate hCert = HealthCertificate.builder().healthLinks(list).build();
+        list.add(link);
+        CertificatePayload payload = CertificatePayload.builder()
+                .iat(System.currentTimeMillis())
+                .iss(signingContext.getIssuer())
+                .healthCertificate(hCert)
+                .exp(expiredInMillies)
                 .build();
+        return new IssuanceItem(qrCode, fileName, qrCodeRequest.getJsonContent(), payload);
     }
 
-    private byte[] generateRandomSequence() {
-        byte[] randomSequence = new byte[32];
-        SecureRandom secureRandom = new SecureRandom();
-        secureRandom.nextBytes(randomSequence);
-        return randomSequence;
+    @Override
+    public ValidateCwtResponse vshcValidation(String qrCodeEncodedContent) {
+        return vshcValidation(qrCodeEncodedContent, httpClientUtils::getSigningKey);
+    }
+
+    @Override
+    public CompletableFuture<ValidateCwtResponse> vshcValidationAsync(String qrCodeEncodedContent) {
+        log.debug("qrCodeEncodedContent : {}", qrCodeEncodedContent);
+        if (ObjectUtils.isEmpty(qrCodeEncodedContent))
+            return CompletableFuture.completedFuture(validationPipeline.pending());
+        return validationPipeline.validateAsync(qrCodeEncodedContent, httpClientUtils::getSigningKeyAsync);
+    }
+
+    @Override
+    public List<ValidateCwtResponse> vshcValidationBatch(List<String> qrCodeEncodedContents)
+            throws GdhcnValidationException {
+        if (qrCodeEncodedContents.size() > maxBatchSize)
+            throw new GdhcnValidationException("Batch size exceeds " + maxBatchSize);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchTimeout);
+        SigningKeyResolver resolver = batchKeyResolver(deadline);
+        List<CompletableFuture<ValidateCwtResponse>> futures = new ArrayList<>(qrCodeEncodedContents.size());
+        int rejected = 0;
+        for (String qrCodeEncodedContent : qrCodeEncodedContents) {
+            try {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    // Work is only started, and only reported, within the time budget
+                    if (System.nanoTime() - deadline >= 0)
+                        return validationPipeline.pending();
+                    ValidateCwtResponse response = vshcValidation(qrCodeEncodedContent, resolver);
+                    return System.nanoTime() - deadline < 0 ? response : validationPipeline.pending();
+                }, validationExecutor));
+            } catch (RejectedExecutionException e) {
+                futures.add(CompletableFuture.completedFuture(validationPipeline.pending()));
+                rejected++;
+            }
+        }
+        if (rejected > 0)
+            log.warn(rejected + " items of a batch validation were left pending, the validation queue is full");
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Batch validation of " + futures.size() + " items exceeded " + batchTimeout + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Batch validation failed", e);
+        }
+        List<ValidateCwtResponse> responses = new ArrayList<>(futures.size());
+        for (CompletableFuture<ValidateCwtResponse> future : futures) {
+            // Items that did not finish in time are reported with every step still pending
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                responses.add(future.join());
+            } else {
+                future.cancel(false);
+                responses.add(validationPipeline.pending());
+            }
+        }
+        return responses;
     }
 
-    private Map<Integer, StepStatus> getDefaultStatus() {
-        Map<Integer, StepStatus> map = new HashMap<Integer, StepStatus>();
-        map.put(1, new StepStatus("1", ValidationStatus.PENDING, ValidationDescription.DECODE_BASE45));
-        map.put(2, new StepStatus("2", ValidationStatus.PENDING, ValidationDescription.DEFLATE_COSE_BYTES));
-        map.put(3, new StepStatus("3", ValidationStatus.PENDING, ValidationDescription.CONVERT_COSE_MESSAGE));
-        map.put(4, new StepStatus("4", ValidationStatus.PENDING, ValidationDescription.COSE_MESSAGE_PAYLOAD_TO_JSON));
-        map.put(5, new StepStatus("5", ValidationStatus.PENDING, ValidationDescription.EXTRACT_COUNTRY_CODE));
-        map.put(6, new StepStatus("6", ValidationStatus.PENDING, ValidationDescription.FETCH_PUBLIC_KEY_GDHCN));
-        map.put(7, new StepStatus("7", ValidationStatus.PENDING, ValidationDescription.VALIDATE_SIGNATURE));
-        map.put(8, new StepStatus("8", ValidationStatus.PENDING, ValidationDescription.EXTRACT_HCERT));
-        map.put(9, new StepStatus("9", ValidationStatus.PENDING, ValidationDescription.VALIDATE_EXPIRY));
-        return map;
+    /**
+     * Returns a resolver that looks each distinct issuer and KID up once and shares
+     * the outcome, success or failure, with every item of the batch using it. No
+     * item waits for a lookup past the batch deadline, and none is started after it.
+     */
+    private SigningKeyResolver batchKeyResolver(long deadline) {
+        Map<String, CompletableFuture<OneKey>> keys = new ConcurrentHashMap<>();
+        return (iss, kid) -> {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                throw new GdhcnTrustListUnavailableException("Batch time budget exhausted before the key lookup");
+            CompletableFuture<OneKey> lookup = new CompletableFuture<>();
+            CompletableFuture<OneKey> existing = keys.putIfAbsent(iss + "/" + kid, lookup);
+            if (existing == null) {
+                try {
+                    httpClientUtils.getSigningKeyAsync(iss, kid).whenComplete((key, error) -> {
+                        if (error == null)
+                            lookup.complete(key);
+                        else
+                            lookup.completeExceptionally(error);
+                    });
+                } catch (RuntimeException e) {
+                    lookup.completeExceptionally(e);
+                }
+                existing = lookup;
+            }
+            try {
+                return existing.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw new GdhcnTrustListUnavailableException("Key lookup of " + iss + "/" + kid
+                        + " exceeded the batch time budget", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GdhcnTrustListUnavailableException(e.getLocalizedMessage(), e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                        ? e.getCause().getCause() : e.getCause();
+                if (cause instanceof GdhcnValidationException validationException)
+                    throw validationException;
+                throw new GdhcnTrustListUnavailableException(cause.getMessage(), cause);
+            }
+        };
+    }
 
+    private ValidateCwtResponse vshcValidation(String qrCodeEncodedContent, SigningKeyResolver signingKeyResolver) {
+        log.debug("qrCodeEncodedContent : {}", qrCodeEncodedContent);
+        if (ObjectUtils.isEmpty(qrCodeEncodedContent))
+            return validationPipeline.pending();
+        return validationPipeline.validate(qrCodeEncodedContent, signingKeyResolver);
     }
 
-    private void updateStatus(Map<Integer, StepStatus> response, Integer step, ValidationStatus status) {
-        response.get(step).setStatus(status);
-        if (status == ValidationStatus.FAILED)
-            response.get(step).setError(response.get(step).getCode().getErrorMessage());
+    private byte[] generateRandomSequence() {
+        byte[] randomSequence = new byte[32];
+        SECURE_RANDOM.nextBytes(randomSequence);
+        return randomSequence;
     }
 
     @Override
@@ -273,45 +508,44 @@ public class GdhcnServiceImpl implements GdhcnService {
     }
 
     @Override
-    public String downloadJson(String manifestId) throws GdhcnValidationException {
+    public Resource downloadJson(String manifestId) throws GdhcnValidationException {
         try {
             // Incase flag not contains P - direct access
             Optional<QrCode> optionalQrCode = qrCodeRepository.findByManifestId(manifestId);
             if (optionalQrCode.isPresent()) {
                 QrCode qrCode = optionalQrCode.get();
-                if (qrCode != null && qrCode.getFlag() != null && qrCode.getFlag().contains("P")) {
+                if (qrCode.getFlag() != null && qrCode.getFlag().contains("P")) {
                     throw new GdhcnValidationException("Invalid request");
                 }
-                if (qrCode != null) {
-                    String fileName = qrCode.getId() + ".json";
-                    InputStream is = gdhcnFileSystem.downloadJson(fileName);
-                    byte[] rawContent = is.readAllBytes();
-                    String jsonContent = new String(rawContent);
-                    log.info("Downloaded json: " + jsonContent);
-                    qrCodeRepository.save(qrCode);
-                    return jsonContent;
-                }
+                String fileName = qrCode.getId() + ".json";
+                Resource resource = gdhcnFileSystem.downloadResource(fileName, qrCode.getExpiresOn());
+                log.info("Streaming json " + fileName);
+                qrCodeRepository.save(qrCode);
+                return resource;
             }
             // access through manifest
-            IpsFile ipsFile = ipsFileRepository.findById(manifestId).get();
-            if (ipsFile != null && ipsFile.isAccessed()) {
+            Optional<IpsFile> optionalIpsFile = ipsFileRepository.findById(manifestId);
+            if (optionalIpsFile.isEmpty())
+                return null;
+            IpsFile ipsFile = optionalIpsFile.get();
+            if (ipsFile.isAccessed()) {
                 throw new GdhcnIPSAlreadyAccessedException("Already Accessed");
             }
+            Optional<QrCode> manifestQrCode = qrCodeRepository.findByManifestId(ipsFile.getManifestId());
+            if (manifestQrCode.isEmpty())
+                return null;
+            String fileName = manifestQrCode.get().getId() + ".json";
+            Resource resource = gdhcnFileSystem.downloadResource(fileName, manifestQrCode.get().getExpiresOn());
+            log.info("Streaming json " + fileName);
             ipsFile.setAccessed(true);
-            QrCode qrCode = qrCodeRepository.findByManifestId(ipsFile.getManifestId()).get();
-            if (qrCode != null) {
-                String fileName = qrCode.getId() + ".json";
-                InputStream is = gdhcnFileSystem.downloadJson(fileName);
-                byte[] rawContent = is.readAllBytes();
-                String jsonContent = new String(rawContent);
-                log.info("Downloaded json: " + jsonContent);
-                ipsFileRepository.save(ipsFile);
-                return jsonContent;
-            }
+            ipsFileRepository.save(ipsFile);
+            return resource;
+        } catch (FileNotFoundException e) {
+            log.warn("JSON of manifest " + manifestId + " not found: " + e.getMessage());
+            return null;
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
-        return null;
     }
 
     @Override
@@ -322,8 +556,7 @@ public class GdhcnServiceImpl implements GdhcnService {
                 String fileName = jsonId + ".json";
                 InputStream is = gdhcnFileSystem.downloadJson(fileName);
                 byte[] rawContent = is.readAllBytes();
-                String jsonContent = new String(rawContent);
-                log.info("Downloaded json: " + jsonContent);
+                log.info("Downloaded json " + fileName + ": " + rawContent.length + " bytes");
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -331,17 +564,9 @@ public class GdhcnServiceImpl implements GdhcnService {
         return null;
     }
 
-    private String getPrivateDSCKeyContent() throws IOException {
-        StringBuilder content = new StringBuilder();
-        try (FileInputStream fis = new FileInputStream(dscKeyPath);
-                InputStreamReader isr = new InputStreamReader(fis);
-                BufferedReader reader = new BufferedReader(isr)) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append(System.lineSeparator());
-            }
-        }
-        return content.toString();
+    /**
+     * A QR code prepared for issuance: its row, the file holding its JSON and the payload to sign.
+     */
+    private record IssuanceItem(QrCode qrCode, String fileName, String jsonContent, CertificatePayload payload) {
     }
 }
@@ -3,13 +3,26 @@ package co.entomo.gdhcn.service.impl;/**
  */
 
 import co.entomo.gdhcn.service.GdhcnFileSystem;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Local file system implementation of the GdhcnFileSystem interface.
@@ -17,31 +30,91 @@ import java.nio.file.*;
  * This service handles the uploading and downloading of JSON files
  * to and from a local file system.
  *
+ * Files are spread over two levels of shard directories named after the
+ * first bytes of a hash of the file name, {@code ab/cd/<uuid>.json}, so no
+ * directory grows past a few thousand entries. Files of the former flat
+ * layout are moved into their shard when first read, and by a background
+ * sweep at startup.
+ *
+ * Every write goes to a temporary file in the target shard, is fsync'd
+ * according to {@code filesystem.fsync}, and is then renamed into place
+ * atomically, so readers never see a torn file and concurrent writers never
+ * share a temporary file. Temporary files left behind by a crash are deleted
+ * by the startup sweep once older than {@code filesystem.staleTempAge}.
+ *
  * @author Uday Matta
  * @organization entomo Labs
  */
+@Slf4j
 @Profile("fileSystem")
 @Service
 public class LocalFileSystem implements GdhcnFileSystem
 {
+    /**
+     * When written files are forced to disk.
+     */
+    public enum FsyncPolicy {
+        /** Force the file and its metadata before the rename and the directory after it. */
+        ALWAYS,
+        /** Force the file content before the rename only. */
+        DATA,
+        /** Leave flushing to the operating system. */
+        NEVER
+    }
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
     @Value("${filesystem.baseLocation}")
     private String baseLocation;
     @Value("${filesystem.folderName}")
     private String jsonFolder;
+    @Value("${filesystem.fsync:ALWAYS}")
+    private FsyncPolicy fsyncPolicy;
+    @Value("${filesystem.migrateOnStartup:true}")
+    private boolean migrateOnStartup;
+    @Value("${filesystem.staleTempAge:1h}")
+    private Duration staleTempAge;
+
+    private Path root;
+    private Thread sweep;
+
+    /**
+     * Creates the JSON folder and starts the background sweep, which moves files
+     * of the flat layout into their shards and deletes stale temporary files.
+     *
+     * @throws IOException if the JSON folder cannot be created.
+     */
+    @PostConstruct
+    void initialize() throws IOException {
+        root = Paths.get(baseLocation, jsonFolder);
+        Files.createDirectories(root);
+        long staleBefore = System.currentTimeMillis() - staleTempAge.toMillis();
+        sweep = new Thread(() -> {
+            if (migrateOnStartup)
+                migrate();
+            deleteStaleTempFiles(staleBefore);
+        }, "filesystem-sweep");
+        sweep.setDaemon(true);
+        sweep.start();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sweep != null)
+            sweep.interrupt();
+    }
 
     /**
      * Uploads a JSON file to the local file system using the provided file name and content.
      *
      * @param fileName    the name of the file to be uploaded.
      * @param fileContent the content of the file to be uploaded as a String.
-     * @throws IOException if an I/O error occurs during the upload process.
+     * @throws IOException if an I/O error occurs during the upload process, or the file already exists.
      */
     @Override
     public void uploadJson(String fileName, String fileContent) throws IOException {
-        String location = baseLocation.endsWith(File.separator)? baseLocation + jsonFolder +File.separator + fileName: baseLocation + File.separator + jsonFolder + File.separator + fileName;
-        Path path = Paths.get(location);
-
-        Files.writeString(path, fileContent, StandardOpenOption.CREATE_NEW);
+        byte[] bytes = fileContent.getBytes(StandardCharsets.UTF_8);
+        write(fileName, new ByteArrayInputStream(bytes), false);
     }
 
     /**
@@ -53,10 +126,23 @@ public class LocalFileSystem implements GdhcnFileSystem
      */
     @Override
     public void uploadJson(String fileName, File file) throws IOException {
-        InputStream is = new FileInputStream(file);
-        String location = baseLocation.endsWith(File.separator)? baseLocation + jsonFolder +File.separator + fileName: baseLocation + File.separator + jsonFolder + File.separator + fileName;
-        Path path = Paths.get(location);
-        Files.copy(is, path, StandardCopyOption.REPLACE_EXISTING);
+        try (InputStream is = new FileInputStream(file)) {
+            write(fileName, is, true);
+        }
+    }
+
+    /**
+     * Uploads a JSON file to the local file system while it is read from a stream.
+     * Nothing is left behind if the stream fails.
+     *
+     * @param fileName      the name of the file to be uploaded.
+     * @param content       the content of the file.
+     * @param contentLength the number of bytes the stream holds.
+     * @throws IOException if an I/O error occurs during the upload process, or the file already exists.
+     */
+    @Override
+    public void uploadJson(String fileName, InputStream content, long contentLength) throws IOException {
+        write(fileName, content, false);
     }
 
     /**
@@ -67,19 +153,208 @@ public class LocalFileSystem implements GdhcnFileSystem
      */
     @Override
     public InputStream downloadJson(String jsonId) throws FileNotFoundException {
-        String fileName = jsonId+".json";
-        String fileLocation = getPath(jsonId);
-        return new FileInputStream(fileLocation);
+        return new FileInputStream(locate(jsonId).toFile());
+    }
+
+    /**
+     * Opens a JSON file of the local file system for streaming. The resource is
+     * backed by the file itself, so its length is known without reading it and
+     * its content is streamed to the response in chunks from a file channel.
+     *
+     * @param jsonId the ID of the JSON file to be downloaded.
+     * @return a {@link Resource} over the JSON file.
+     * @throws FileNotFoundException if the file does not exist.
+     */
+    @Override
+    public Resource downloadResource(String jsonId) throws FileNotFoundException {
+        return new FileSystemResource(locate(jsonId));
+    }
+
+    /**
+     * Deletes a JSON file from its shard of the local file system, and from the
+     * flat layout if it was never moved.
+     *
+     * @param fileName the name of the file to be deleted.
+     * @throws IOException if an I/O error occurs while deleting the file.
+     */
+    @Override
+    public void deleteJson(String fileName) throws IOException {
+        Files.deleteIfExists(shardPath(fileName));
+        Files.deleteIfExists(root.resolve(fileName));
     }
 
     /**
      * Retrieves the full path of the file in the local file system using the provided file name.
      *
      * @param fileName the name of the file whose path is to be retrieved.
-     * @return the full path of the file in the local file system as a String.
+     * @return the full path of the file in its shard of the local file system as a String.
      */
     @Override
     public String getPath(String fileName) {
-        return baseLocation.endsWith(File.separator) ? baseLocation  + jsonFolder + File.separator + fileName : baseLocation +File.separator + jsonFolder + File.separator + fileName;
+        return shardPath(fileName).toString();
+    }
+
+    private Path shardPath(String fileName) {
+        byte[] hash = sha256().digest(fileName.getBytes(StandardCharsets.UTF_8));
+        HexFormat hex = HexFormat.of();
+        return root.resolve(hex.toHexDigits(hash[0])).resolve(hex.toHexDigits(hash[1])).resolve(fileName);
+    }
+
+    /**
+     * Finds a file in its shard, moving it there first if it is still in the flat layout.
+     */
+    private Path locate(String fileName) throws FileNotFoundException {
+        Path path = shardPath(fileName);
+        if (Files.isRegularFile(path))
+            return path;
+        Path legacy = root.resolve(fileName);
+        if (Files.isRegularFile(legacy)) {
+            try {
+                moveToShard(legacy, path);
+            } catch (IOException e) {
+                log.warn("Unable to move " + legacy + " into its shard: " + e.getMessage());
+                if (Files.isRegularFile(legacy))
+                    return legacy;
+            }
+        }
+        if (Files.isRegularFile(path))
+            return path;
+        throw new FileNotFoundException(path.toString());
+    }
+
+    private void moveToShard(Path legacy, Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        try {
+            Files.move(legacy, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // Moved by a concurrent reader or the migration sweep
+        }
+    }
+
+    /**
+     * Moves every file of the flat layout into its shard.
+     */
+    private void migrate() {
+        int moved = 0;
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path legacy : (Iterable<Path>) files::iterator) {
+                if (Thread.currentThread().isInterrupted())
+                    return;
+                String fileName = legacy.getFileName().toString();
+                if (!Files.isRegularFile(legacy) || fileName.endsWith(TEMP_SUFFIX))
+                    continue;
+                moveToShard(legacy, shardPath(fileName));
+                moved++;
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Migration of " + root + " to sharded layout stopped: " + e.getMessage());
+        }
+        if (moved > 0)
+            log.info("Moved " + moved + " files of " + root + " into shards");
+    }
+
+    /**
+     * Deletes the temporary files of writes that never completed, in the root
+     * and the shards, last modified before {@code staleBefore}. Younger ones may
+     * belong to a write in progress, here or in another instance sharing the folder.
+     */
+    private void deleteStaleTempFiles(long staleBefore) {
+        int deleted = 0;
+        try (Stream<Path> files = Files.walk(root, 3)) {
+            for (Path temp : (Iterable<Path>) files::iterator) {
+                if (Thread.currentThread().isInterrupted())
+                    return;
+                String fileName = temp.getFileName().toString();
+                if (!fileName.startsWith(".") || !fileName.endsWith(TEMP_SUFFIX) || !Files.isRegularFile(temp))
+                    continue;
+                try {
+                    if (Files.getLastModifiedTime(temp).toMillis() < staleBefore && Files.deleteIfExists(temp))
+                        deleted++;
+                } catch (NoSuchFileException e) {
+                    // Renamed into place or deleted by its writer
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Sweep of temporary files in " + root + " stopped: " + e.getMessage());
+        }
+        if (deleted > 0)
+            log.info("Deleted " + deleted + " stale temporary files of " + root);
+    }
+
+    /**
+     * Writes a file through a temporary file in its shard and renames it into
+     * place. Without {@code replace} the rename is a hard link, which fails
+     * atomically if the file exists.
+     */
+    private void write(String fileName, InputStream content, boolean replace) throws IOException {
+        Path path = shardPath(fileName);
+        Path directory = path.getParent();
+        Files.createDirectories(directory);
+        Path temp = directory.resolve("." + fileName + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                copy(content, channel);
+                // DATA leaves the file's metadata, such as its modification time, to the operating system
+                if (fsyncPolicy != FsyncPolicy.NEVER)
+                    channel.force(fsyncPolicy == FsyncPolicy.ALWAYS);
+            }
+            if (replace) {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                publish(temp, path);
+            }
+            if (fsyncPolicy == FsyncPolicy.ALWAYS)
+                forceDirectory(directory);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void publish(Path temp, Path path) throws IOException {
+        try {
+            createLink(path, temp);
+        } catch (UnsupportedOperationException e) {
+            // Without hard links the check and the rename are two steps
+            if (Files.exists(path))
+                throw new FileAlreadyExistsException(path.toString());
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Creates a hard link to an existing file.
+     *
+     * @throws UnsupportedOperationException if the file system has no hard links.
+     */
+    void createLink(Path link, Path existing) throws IOException {
+        Files.createLink(link, existing);
+    }
+
+    private static void copy(InputStream content, FileChannel channel) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        int n;
+        while ((n = content.read(buffer)) >= 0) {
+            wrapped.clear().limit(n);
+            while (wrapped.hasRemaining())
+                channel.write(wrapped);
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can open a directory; the file itself is already forced
+            log.debug("Unable to force directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,617 @@
+package co.entomo.gdhcn.service.impl;/**
+ * @author Uday Matta
+ */
+
+import co.entomo.gdhcn.repository.QrCodeRepository;
+import co.entomo.gdhcn.service.GdhcnFileSystem;
+import co.entomo.gdhcn.util.ByteBufferInputStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Segment log implementation of the GdhcnFileSystem interface.
+ *
+ * JSON files are appended as records to memory-mapped segment files of
+ * {@code filesystem.segment.size} bytes instead of being stored as files of
+ * their own, and an in-memory index maps each file name to its record. A
+ * record is laid out as
+ * <pre>
+ * length (4) | status (1) | key length (2) | written at (8) | CRC32C (4) | key | content
+ * </pre>
+ * The length is written when the space is reserved, so concurrent writers
+ * stream their content into the segment side by side, and the status only
+ * turns to committed once the content and its checksum are in place. The
+ * index is rebuilt at startup by scanning the segments, skipping records that
+ * were never committed or whose checksum does not match.
+ *
+ * Unless {@code filesystem.fsync} is {@code NEVER}, an upload returns only
+ * once its record is on disk. Writers waiting within the same
+ * {@code filesystem.segment.commitInterval} share a single force of the
+ * segments they wrote to.
+ *
+ * Compaction rewrites the live records of a sealed segment into the active
+ * one and deletes it once less than {@code filesystem.segment.compactionThreshold}
+ * of it is still live. Records are dead when they have been replaced, or when
+ * their QR code has expired or does not exist once
+ * {@code filesystem.segment.compactionGrace} has passed since they were written.
+ *
+ * @author Uday Matta
+ * @organization entomo Labs
+ */
+@Slf4j
+@Profile("segmentLog")
+@Service
+public class SegmentLogFileSystem implements GdhcnFileSystem
+{
+    private static final int STATUS_OFFSET = 4;
+    private static final int KEY_LENGTH_OFFSET = 5;
+    private static final int WRITTEN_AT_OFFSET = 7;
+    private static final int CRC_OFFSET = 15;
+    private static final int HEADER = 19;
+    private static final byte PENDING = 0;
+    private static final byte COMMITTED = 1;
+    private static final byte ABANDONED = 2;
+    private static final int COPY_BUFFER = 64 * 1024;
+    private static final int EXPIRY_BATCH = 500;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String JSON_SUFFIX = ".json";
+
+    @Value("${filesystem.baseLocation}")
+    private String baseLocation;
+    @Value("${filesystem.segment.folderName:segments}")
+    private String segmentFolder;
+    @Value("${filesystem.segment.size:268435456}")
+    private int segmentSize;
+    @Value("${filesystem.fsync:ALWAYS}")
+    private LocalFileSystem.FsyncPolicy fsyncPolicy;
+    @Value("${filesystem.segment.commitInterval:2ms}")
+    private Duration commitInterval;
+    @Value("${filesystem.segment.compactionInterval:1h}")
+    private Duration compactionInterval;
+    @Value("${filesystem.segment.compactionThreshold:0.5}")
+    private double compactionThreshold;
+    @Value("${filesystem.segment.compactionGrace:1h}")
+    private Duration compactionGrace;
+
+    @Autowired
+    private QrCodeRepository qrCodeRepository;
+
+    private Path root;
+    private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Set<String> writing = ConcurrentHashMap.newKeySet();
+    private final Object appendLock = new Object();
+    private Segment active;
+    private final Set<Segment> dirty = ConcurrentHashMap.newKeySet();
+    private final Object commitLock = new Object();
+    private CompletableFuture<Void> pendingCommit;
+    private Thread committer;
+    private ScheduledExecutorService compactionScheduler;
+
+    /**
+     * Opens the existing segments, rebuilds the index from them and starts a new active segment.
+     *
+     * @throws IOException if the segments cannot be read or created.
+     */
+    @PostConstruct
+    void initialize() throws IOException {
+        root = Paths.get(baseLocation, segmentFolder);
+        Files.createDirectories(root);
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(root)) {
+            paths = files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        long lastId = 0;
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            Segment segment = open(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), path, false);
+            recover(segment);
+            segments.put(segment.id, segment);
+            lastId = segment.id;
+        }
+        synchronized (appendLock) {
+            active = create(lastId + 1);
+        }
+        log.info("Opened " + segments.size() + " segments in " + root + " holding " + index.size() + " files");
+
+        committer = new Thread(this::commitLoop, "segment-log-commit");
+        committer.setDaemon(true);
+        committer.start();
+        compactionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "segment-log-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionScheduler.scheduleWithFixedDelay(this::compact, compactionInterval.toMillis(),
+                compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        compactionScheduler.shutdownNow();
+        committer.interrupt();
+        committer.join(TimeUnit.SECONDS.toMillis(5));
+        CompletableFuture<Void> commit;
+        synchronized (commitLock) {
+            commit = pendingCommit;
+            pendingCommit = null;
+        }
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            close(segment);
+        }
+        if (commit != null)
+            commit.complete(null);
+    }
+
+    /**
+     * Appends a JSON file to the segment log using the provided file name and content.
+     *
+     * @param fileName    the name of the file to be uploaded.
+     * @param fileContent the content of the file to be uploaded as a String.
+     * @throws IOException if an I/O error occurs during the upload process, or the file already exists.
+     */
+    @Override
+    public void uploadJson(String fileName, String fileContent) throws IOException {
+        byte[] bytes = fileContent.getBytes(StandardCharsets.UTF_8);
+        append(fileName, new ByteArrayInputStream(bytes), bytes.length, false);
+    }
+
+    /**
+     * Appends a JSON file to the segment log using the provided file name and
+     * File object, replacing any earlier file of the same name.
+     *
+     * @param fileName the name of the file to be uploaded.
+     * @param file     the File object representing the file to be uploaded.
+     * @throws IOException if an I/O error occurs during the upload process.
+     */
+    @Override
+    public void uploadJson(String fileName, File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            append(fileName, is, file.length(), true);
+        }
+    }
+
+    /**
+     * Appends a JSON file to the segment log while it is read from a stream.
+     * A record whose stream fails is never committed.
+     *
+     * @param fileName      the name of the file to be uploaded.
+     * @param content       the content of the file.
+     * @param contentLength the number of bytes the stream holds; it must be known up front.
+     * @throws IOException if an I/O error occurs during the upload process, or the file already exists.
+     */
+    @Override
+    public void uploadJson(String fileName, InputStream content, long contentLength) throws IOException {
+        append(fileName, content, contentLength, false);
+    }
+
+    /**
+     * Reads a JSON file of the segment log straight from its mapped segment.
+     *
+     * @param jsonId the ID of the JSON file to be downloaded.
+     * @return an InputStream for reading the contents of the JSON file.
+     * @throws FileNotFoundException if the file does not exist.
+     */
+    @Override
+    public InputStream downloadJson(String jsonId) throws FileNotFoundException {
+        return new ByteBufferInputStream(locate(jsonId).value());
+    }
+
+    /**
+     * Opens a JSON file of the segment log for streaming from its mapped segment.
+     *
+     * @param jsonId the ID of the JSON file to be downloaded.
+     * @return a {@link Resource} over the JSON file, reporting its length.
+     * @throws FileNotFoundException if the file does not exist.
+     */
+    @Override
+    public Resource downloadResource(String jsonId) throws FileNotFoundException {
+        Location location = locate(jsonId);
+        int contentLength = location.valueLength();
+        return new InputStreamResource(new ByteBufferInputStream(location.value())) {
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+        };
+    }
+
+    /**
+     * Deletes a JSON file of the segment log by abandoning its record, which
+     * recovery then skips and the next compaction of its segment drops.
+     *
+     * @param fileName the name of the file to be deleted.
+     * @throws IOException if the segment cannot be forced.
+     */
+    @Override
+    public void deleteJson(String fileName) throws IOException {
+        Location location = index.remove(fileName);
+        if (location == null)
+            return;
+        location.segment().buffer.put(location.offset() + STATUS_OFFSET, ABANDONED);
+        awaitCommit(location.segment());
+    }
+
+    /**
+     * Retrieves the logical path of a file in the segment log. Files are
+     * records of the segments in this directory, not files of their own.
+     *
+     * @param fileName the name of the file whose path is to be retrieved.
+     * @return the logical path of the file as a String.
+     */
+    @Override
+    public String getPath(String fileName) {
+        return root.resolve(fileName).toString();
+    }
+
+    private Location locate(String fileName) throws FileNotFoundException {
+        Location location = index.get(fileName);
+        if (location == null)
+            throw new FileNotFoundException(getPath(fileName));
+        return location;
+    }
+
+    private void append(String fileName, InputStream content, long contentLength, boolean replace) throws IOException {
+        byte[] key = fileName.getBytes(StandardCharsets.UTF_8);
+        long length = HEADER + key.length + contentLength;
+        if (contentLength < 0 || key.length > 0xffff || length > segmentSize)
+            throw new IOException("Cannot store " + fileName + " of " + contentLength + " bytes in segments of "
+                    + segmentSize + " bytes");
+        Location location = reserve(fileName, (int) length, key.length, !replace);
+        Segment segment = location.segment();
+        try {
+            CRC32C crc = new CRC32C();
+            segment.buffer.put(location.offset() + HEADER, key);
+            crc.update(key);
+            byte[] chunk = new byte[(int) Math.max(1, Math.min(COPY_BUFFER, contentLength))];
+            int position = location.valueOffset();
+            int end = position + location.valueLength();
+            int n;
+            while (position < end && (n = content.read(chunk, 0, Math.min(chunk.length, end - position))) >= 0) {
+                segment.buffer.put(position, chunk, 0, n);
+                crc.update(chunk, 0, n);
+                position += n;
+            }
+            if (position < end || content.read() >= 0)
+                throw new IOException("Content of " + fileName + " does not hold " + contentLength + " bytes");
+            segment.buffer.putLong(location.offset() + WRITTEN_AT_OFFSET, System.currentTimeMillis());
+            segment.buffer.putInt(location.offset() + CRC_OFFSET, (int) crc.getValue());
+            segment.buffer.put(location.offset() + STATUS_OFFSET, COMMITTED);
+            awaitCommit(segment);
+            index.put(fileName, location);
+        } catch (IOException | RuntimeException e) {
+            segment.buffer.put(location.offset() + STATUS_OFFSET, ABANDONED);
+            throw e;
+        } finally {
+            segment.writers.decrementAndGet();
+            if (!replace)
+                writing.remove(fileName);
+        }
+    }
+
+    /**
+     * Reserves space for a record in the active segment, rolling to a new
+     * segment if it does not fit. The caller must decrement the writers of the
+     * segment once the record is committed or abandoned.
+     */
+    private Location reserve(String fileName, int length, int keyLength, boolean createNew) throws IOException {
+        synchronized (appendLock) {
+            if (createNew && (index.containsKey(fileName) || !writing.add(fileName)))
+                throw new FileAlreadyExistsException(getPath(fileName));
+            Segment segment = active;
+            if (segment.position > segment.buffer.capacity() - length) {
+                try {
+                    segment = create(segment.id + 1);
+                } catch (IOException e) {
+                    if (createNew)
+                        writing.remove(fileName);
+                    throw e;
+                }
+                active = segment;
+            }
+            int offset = segment.position;
+            segment.buffer.putInt(offset, length);
+            segment.buffer.put(offset + STATUS_OFFSET, PENDING);
+            segment.buffer.putShort(offset + KEY_LENGTH_OFFSET, (short) keyLength);
+            segment.position = offset + length;
+            segment.writers.incrementAndGet();
+            return new Location(fileName, segment, offset, length, keyLength);
+        }
+    }
+
+    /**
+     * Waits until the records written to a segment so far are on disk.
+     */
+    private void awaitCommit(Segment segment) throws IOException {
+        if (fsyncPolicy == LocalFileSystem.FsyncPolicy.NEVER)
+            return;
+        dirty.add(segment);
+        CompletableFuture<Void> commit;
+        synchronized (commitLock) {
+            if (pendingCommit == null) {
+                pendingCommit = new CompletableFuture<>();
+                commitLock.notifyAll();
+            }
+            commit = pendingCommit;
+        }
+        try {
+            commit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the segment log to be forced");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to force the segment log", e.getCause());
+        }
+    }
+
+    /**
+     * Forces the segments written to since the last commit, once per commit
+     * interval, and releases every writer that waited for it.
+     */
+    private void commitLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            CompletableFuture<Void> commit;
+            try {
+                synchronized (commitLock) {
+                    while (pendingCommit == null)
+                        commitLock.wait();
+                }
+                if (!commitInterval.isZero() && !commitInterval.isNegative())
+                    TimeUnit.NANOSECONDS.sleep(commitInterval.toNanos());
+                synchronized (commitLock) {
+                    commit = pendingCommit;
+                    pendingCommit = null;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                for (Iterator<Segment> it = dirty.iterator(); it.hasNext(); ) {
+                    Segment segment = it.next();
+                    it.remove();
+                    segment.buffer.force();
+                }
+                commit.complete(null);
+            } catch (RuntimeException e) {
+                log.error("Unable to force the segment log", e);
+                commit.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Rewrites sealed segments that are mostly dead and deletes them.
+     */
+    void compact() {
+        try {
+            long now = System.currentTimeMillis();
+            Segment current;
+            synchronized (appendLock) {
+                current = active;
+            }
+            // No record can be reserved in a sealed segment, so once it has no writers its index entries are final
+            Map<Segment, List<Location>> candidates = new HashMap<>();
+            for (Segment segment : segments.values())
+                if (segment != current && segment.writers.get() == 0)
+                    candidates.put(segment, new ArrayList<>());
+            for (Location location : index.values()) {
+                List<Location> locations = candidates.get(location.segment());
+                if (locations != null)
+                    locations.add(location);
+            }
+            Set<String> expired = expired(candidates.values(), now);
+            for (Map.Entry<Segment, List<Location>> candidate : candidates.entrySet()) {
+                Segment segment = candidate.getKey();
+                List<Location> live = new ArrayList<>();
+                long liveBytes = 0;
+                for (Location location : candidate.getValue()) {
+                    if (!expired.contains(location.key())) {
+                        live.add(location);
+                        liveBytes += location.length();
+                    }
+                }
+                if (liveBytes > 0 && liveBytes >= segment.position * compactionThreshold)
+                    continue;
+                Map<Location, Location> moved = new HashMap<>();
+                for (Location location : live)
+                    moved.put(location, relocate(location));
+                for (Segment target : new HashSet<>(moved.values().stream().map(Location::segment).toList()))
+                    awaitCommit(target);
+                moved.forEach((from, to) -> index.replace(from.key(), from, to));
+                for (Location location : candidate.getValue())
+                    index.remove(location.key(), location);
+                drop(segment);
+                log.info("Compacted segment " + segment.path + ": kept " + live.size() + " of "
+                        + candidate.getValue().size() + " files, " + liveBytes + " of " + segment.position + " bytes");
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Compaction of " + root + " failed", e);
+        }
+    }
+
+    /**
+     * Finds the files whose QR code has expired or was never saved, among those written before the grace period.
+     */
+    private Set<String> expired(Collection<List<Location>> candidates, long now) {
+        long writtenBefore = now - compactionGrace.toMillis();
+        Map<String, String> keysById = new HashMap<>();
+        Set<String> expired = new HashSet<>();
+        for (List<Location> locations : candidates) {
+            for (Location location : locations) {
+                if (!location.key().endsWith(JSON_SUFFIX) || location.writtenAt() >= writtenBefore)
+                    continue;
+                keysById.put(location.key().substring(0, location.key().length() - JSON_SUFFIX.length()), location.key());
+                if (keysById.size() == EXPIRY_BATCH)
+                    collectExpired(keysById, now, expired);
+            }
+        }
+        if (!keysById.isEmpty())
+            collectExpired(keysById, now, expired);
+        return expired;
+    }
+
+    private void collectExpired(Map<String, String> keysById, long now, Set<String> expired) {
+        Set<String> unexpired = qrCodeRepository.findUnexpiredIds(keysById.keySet(), new Date(now));
+        keysById.forEach((id, key) -> {
+            if (!unexpired.contains(id))
+                expired.add(key);
+        });
+        keysById.clear();
+    }
+
+    /**
+     * Copies a committed record to the active segment without publishing it in the index.
+     */
+    private Location relocate(Location from) throws IOException {
+        Location to = reserve(from.key(), from.length(), from.keyLength(), false);
+        Segment segment = to.segment();
+        try {
+            ByteBuffer source = from.segment().buffer;
+            segment.buffer.put(to.offset() + HEADER, source, from.offset() + HEADER, from.length() - HEADER);
+            segment.buffer.putLong(to.offset() + WRITTEN_AT_OFFSET, from.writtenAt());
+            segment.buffer.putInt(to.offset() + CRC_OFFSET, source.getInt(from.offset() + CRC_OFFSET));
+            segment.buffer.put(to.offset() + STATUS_OFFSET, COMMITTED);
+            return to;
+        } finally {
+            segment.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Scans a segment for committed records and adds them to the index. Later
+     * records of a name replace earlier ones.
+     */
+    private void recover(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int limit = buffer.capacity();
+        int offset = 0;
+        while (offset <= limit - HEADER) {
+            int length = buffer.getInt(offset);
+            if (length == 0)
+                break;
+            int keyLength = buffer.getShort(offset + KEY_LENGTH_OFFSET) & 0xffff;
+            if (length < HEADER + keyLength || length > limit - offset) {
+                log.warn("Ignoring " + segment.path + " from offset " + offset + ": torn record");
+                break;
+            }
+            if (buffer.get(offset + STATUS_OFFSET) == COMMITTED) {
+                byte[] key = new byte[keyLength];
+                buffer.get(offset + HEADER, key);
+                CRC32C crc = new CRC32C();
+                crc.update(buffer.slice(offset + HEADER, length - HEADER));
+                if ((int) crc.getValue() == buffer.getInt(offset + CRC_OFFSET)) {
+                    String fileName = new String(key, StandardCharsets.UTF_8);
+                    index.put(fileName, new Location(fileName, segment, offset, length, keyLength));
+                } else {
+                    log.warn("Ignoring record at offset " + offset + " of " + segment.path + ": checksum mismatch");
+                }
+            }
+            offset += length;
+        }
+        segment.position = offset;
+    }
+
+    private Segment create(long id) throws IOException {
+        Path path = root.resolve(String.format("%016d", id) + SEGMENT_SUFFIX);
+        Segment segment = open(id, path, true);
+        segments.put(id, segment);
+        if (fsyncPolicy == LocalFileSystem.FsyncPolicy.ALWAYS) {
+            try (FileChannel directory = FileChannel.open(root, StandardOpenOption.READ)) {
+                directory.force(true);
+            } catch (IOException e) {
+                log.debug("Unable to force directory {}: {}", root, e.getMessage());
+            }
+        }
+        return segment;
+    }
+
+    private Segment open(long id, Path path, boolean create) throws IOException {
+        FileChannel channel = create
+                ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = create ? segmentSize : channel.size();
+            return new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes a segment. Readers still holding a record keep reading it from
+     * the mapping, which lives on until it is garbage collected.
+     */
+    private void drop(Segment segment) throws IOException {
+        segments.remove(segment.id);
+        dirty.remove(segment);
+        close(segment);
+        Files.deleteIfExists(segment.path);
+    }
+
+    private static void close(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            log.debug("Unable to close segment {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        /** End of the last reserved record, guarded by the append lock. */
+        private volatile int position;
+        /** Records reserved in this segment and not yet committed or abandoned. */
+        private final AtomicInteger writers = new AtomicInteger();
+
+        private Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Location(String key, Segment segment, int offset, int length, int keyLength) {
+
+        int valueOffset() {
+            return offset + HEADER + keyLength;
+        }
+
+        int valueLength() {
+            return length - HEADER - keyLength;
+        }
+
+        ByteBuffer value() {
+            return segment.buffer.slice(valueOffset(), valueLength());
+        }
+
+        long writtenAt() {
+            return segment.buffer.getLong(offset + WRITTEN_AT_OFFSET);
+        }
+    }
+}
@@ -67,6 +67,23 @@ public class AmazonClientUtil {
         InputStream stream = new ByteArrayInputStream(fileContent.getBytes(Charset.forName("UTF-8")));
         s3client.putObject(new PutObjectRequest(bucketName, folderToUpload + "/" + fileName, stream, metadata));
     }
+    /**
+     * Uploads a stream to the specified folder in the S3 bucket. The content
+     * length is sent up front so that the SDK streams the content instead of
+     * buffering it to compute the length.
+     *
+     * @param fileName       the name of the file to be uploaded.
+     * @param content        the content of the file.
+     * @param contentLength  the number of bytes the stream holds.
+     * @param folderToUpload the folder within the S3 bucket where the file will be uploaded.
+     */
+	public void uploadFileToBucket(String fileName, InputStream content, long contentLength, String folderToUpload) {
+        log.info("Uploading file {} ({} bytes) to {}", fileName, contentLength, folderToUpload);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("application/json");
+        metadata.setContentLength(contentLength);
+        s3client.putObject(new PutObjectRequest(bucketName, folderToUpload + "/" + fileName, content, metadata));
+    }
     /**
      * Uploads a file to the specified folder in the S3 bucket.
      *
@@ -79,6 +96,18 @@ public class AmazonClientUtil {
         s3client.putObject(new PutObjectRequest(bucketName, folderToUpload + "/" + fileName, file));
     }
 
+    /**
+     * Deletes a file from the specified folder in the S3 bucket. Deleting a
+     * file that does not exist succeeds.
+     *
+     * @param fileName   the name of the file to be deleted.
+     * @param folderName the folder within the S3 bucket where the file is stored.
+     */
+    public void deleteFileFromBucket(String fileName, String folderName) {
+        log.info("Deleting file {} from {}", fileName, folderName);
+        s3client.deleteObject(bucketName, folderName + "/" + fileName);
+    }
+
     /**
      * Retrieves a file from the specified folder in the S3 bucket and returns it as a {@code File} object.
      *
@@ -103,4 +132,15 @@ public class AmazonClientUtil {
         S3Object s3object = s3client.getObject(bucketName, folderName + "/" + filename);
         return s3object.getObjectContent();
     }
+    /**
+     * Retrieves a file from the specified folder in the S3 bucket with its metadata.
+     * The caller must close the object to release its connection.
+     *
+     * @param filename   the name of the file to be retrieved.
+     * @param folderName the folder within the S3 bucket where the file is stored.
+     * @return the {@link S3Object}, whose content is streamed from S3 as it is read.
+     */
+    public S3Object getObject(String filename, String folderName) {
+        return s3client.getObject(bucketName, folderName + "/" + filename);
+    }
 }
@@ -0,0 +1,99 @@
+package co.entomo.gdhcn.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Stream that digests the bytes read through it and fails once more than a
+ * maximum number of bytes has been read, so a document can be capped and
+ * hashed while it is copied to storage instead of being buffered first.
+ */
+public class BoundedDigestInputStream extends FilterInputStream {
+
+	private final long maxBytes;
+	private final MessageDigest digest;
+	private long count;
+
+	/**
+	 * @param in        the stream to read.
+	 * @param maxBytes  the most bytes that may be read.
+	 * @param algorithm the {@link MessageDigest} algorithm, such as {@code SHA-256}.
+	 */
+	public BoundedDigestInputStream(InputStream in, long maxBytes, String algorithm) {
+		super(in);
+		this.maxBytes = maxBytes;
+		try {
+			this.digest = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException(algorithm, e);
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b >= 0) {
+			count(1);
+			digest.update((byte) b);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if (n > 0) {
+			count(n);
+			digest.update(b, off, n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		// Skipped bytes would be missing from the digest
+		throw new IOException("skip not supported");
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void count(int n) throws LimitExceededException {
+		count += n;
+		if (count > maxBytes)
+			throw new LimitExceededException("Document exceeds " + maxBytes + " bytes");
+	}
+
+	/**
+	 * @return the number of bytes read so far.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Completes the digest; call once the stream has been read to its end.
+	 *
+	 * @return the Base64 encoded digest of the bytes read.
+	 */
+	public String getDigest() {
+		return Base64.getEncoder().encodeToString(digest.digest());
+	}
+
+	/**
+	 * Thrown when more than the maximum number of bytes has been read.
+	 */
+	public static class LimitExceededException extends IOException {
+		public LimitExceededException(String message) {
+			super(message);
+		}
+	}
+}
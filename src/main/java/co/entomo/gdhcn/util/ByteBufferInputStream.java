@@ -0,0 +1,50 @@
+package co.entomo.gdhcn.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Reads a buffer from its position to its limit, so that content held in a
+ * mapped segment or a direct buffer is streamed without copying it to the heap
+ * first. The buffer should be a duplicate or slice owned by the stream.
+ */
+public final class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		Objects.checkFromIndexSize(off, len, b.length);
+		if (len == 0)
+			return 0;
+		if (!buffer.hasRemaining())
+			return -1;
+		int n = Math.min(len, buffer.remaining());
+		buffer.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+}
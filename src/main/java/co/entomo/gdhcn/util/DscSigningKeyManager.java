@@ -0,0 +1,189 @@
+package co.entomo.gdhcn.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import COSE.CoseException;
+import COSE.OneKey;
+import co.entomo.gdhcn.config.DscKeyRingProperties;
+import co.entomo.gdhcn.exceptions.GdhcnValidationException;
+import co.entomo.gdhcn.hcert.GreenCertificateEncoder;
+import co.entomo.gdhcn.hcert.SigningContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Holds the ring of DSC signing keys used for issuance, keyed by issuer and KID.
+ * The ring is made of {@code tng.dsc.privateKey} for {@code tng.country}, the
+ * default issuer, and of every {@code tng.dsc.keyRing} entry. Each key file is
+ * read and parsed once into an immutable {@link SigningContext}, and the files
+ * are watched so that a rotated key replaces its context atomically without a
+ * restart. A rotation that cannot be parsed keeps the previous key.
+ *
+ * A request naming only its issuer is signed with the issuer's active key, so
+ * during a rollover the old and the new key can both be held while new
+ * issuance moves to the new one.
+ */
+@Slf4j
+@Component
+public class DscSigningKeyManager {
+
+	@Value("${tng.country}")
+	private String countryCode;
+	@Value("${tng.dsc.privateKey}")
+	private String dscKeyPath;
+	@Value("${tng.dsc.privateKey.kid}")
+	private String kidId;
+	@Autowired
+	private CertificateUtils certificateUtils;
+	@Autowired
+	private DscKeyRingProperties keyRingProperties;
+
+	private final Map<String, Map<String, Slot>> ring = new LinkedHashMap<>();
+	private final Map<String, Slot> active = new LinkedHashMap<>();
+	private FileChangeWatcher watcher;
+
+	/**
+	 * Loads the DSC keys and starts watching the key files for rotation.
+	 */
+	@PostConstruct
+	void initialize() {
+		if (StringUtils.hasLength(dscKeyPath))
+			add(countryCode, kidId, dscKeyPath, false);
+		for (DscKeyRingProperties.Entry entry : keyRingProperties.getKeyRing())
+			add(entry.getIssuer(), entry.getKid(), entry.getPrivateKey(), entry.isActive());
+		if (ring.isEmpty()) {
+			log.warn("No DSC signing key configured, issuance is disabled");
+			return;
+		}
+		reload();
+		List<Path> files = new ArrayList<>();
+		ring.values().forEach(slots -> slots.values().forEach(slot -> files.add(slot.path())));
+		try {
+			watcher = new FileChangeWatcher("dsc-key-watcher", files, this::reload);
+			watcher.start();
+		} catch (IOException e) {
+			log.warn("Unable to watch DSC keys, rotation requires a restart: " + e.getMessage());
+		}
+	}
+
+	private void add(String issuer, String kid, String path, boolean isActive) {
+		if (!StringUtils.hasText(issuer) || !StringUtils.hasText(kid) || !StringUtils.hasLength(path))
+			throw new IllegalStateException("DSC key ring entries need an issuer, a kid and a privateKey");
+		Slot slot = new Slot(issuer, kid, Paths.get(path), isActive, new AtomicReference<>());
+		if (ring.computeIfAbsent(issuer, i -> new LinkedHashMap<>()).putIfAbsent(kid, slot) != null)
+			throw new IllegalStateException("Duplicate DSC key " + issuer + "/" + kid);
+		Slot current = active.get(issuer);
+		if (isActive && current != null && current.active())
+			throw new IllegalStateException("More than one active DSC key for " + issuer);
+		if (isActive || current == null || !current.active())
+			active.put(issuer, slot);
+	}
+
+	@PreDestroy
+	void shutdown() throws IOException {
+		if (watcher != null)
+			watcher.close();
+	}
+
+	/**
+	 * Returns the signing context of the default issuer's active key.
+	 *
+	 * @return the {@link SigningContext} of the DSC key.
+	 * @throws GdhcnValidationException if no DSC key could be loaded.
+	 */
+	public SigningContext getSigningContext() throws GdhcnValidationException {
+		return getSigningContext(null, null);
+	}
+
+	/**
+	 * Returns the signing context of a key of the ring.
+	 *
+	 * @param issuer the issuing country, {@code null} for {@code tng.country}.
+	 * @param kid    the KID of the key, {@code null} for the issuer's active key.
+	 * @return the {@link SigningContext} of the DSC key.
+	 * @throws GdhcnValidationException if the ring holds no such key or it could not be loaded.
+	 */
+	public SigningContext getSigningContext(String issuer, String kid) throws GdhcnValidationException {
+		String iss = StringUtils.hasText(issuer) ? issuer : countryCode;
+		Slot slot;
+		if (StringUtils.hasText(kid)) {
+			Map<String, Slot> slots = ring.get(iss);
+			slot = slots == null ? null : slots.get(kid);
+		} else {
+			slot = active.get(iss);
+		}
+		if (slot == null)
+			throw new GdhcnValidationException("No DSC signing key for " + iss + (kid != null ? "/" + kid : ""));
+		Loaded loaded = slot.loaded().get();
+		if (loaded == null)
+			throw new GdhcnValidationException("DSC signing key " + iss + "/" + slot.kid() + " not available");
+		return loaded.context();
+	}
+
+	/**
+	 * @return the issuers the ring holds keys for.
+	 */
+	public Set<String> getIssuers() {
+		return Collections.unmodifiableSet(ring.keySet());
+	}
+
+	/**
+	 * Reads every key file and swaps in a new signing context where its content changed.
+	 */
+	void reload() {
+		ring.values().forEach(slots -> slots.values().forEach(this::reload));
+	}
+
+	private void reload(Slot slot) {
+		String content;
+		try {
+			content = Files.readString(slot.path());
+		} catch (IOException e) {
+			log.warn("Unable to read DSC key " + slot.path() + ": " + e.getMessage());
+			return;
+		}
+		Loaded previous = slot.loaded().get();
+		if (previous != null && Objects.equals(previous.content(), content))
+			return;
+		PrivateKey privateKey = certificateUtils.getPrivateKey(content, slot.issuer());
+		if (privateKey == null) {
+			log.warn("Unable to parse DSC key " + slot.path() + ", keeping the current key");
+			return;
+		}
+		try {
+			OneKey cborPrivateKey = new OneKey(null, privateKey);
+			SigningContext context = new SigningContext(slot.issuer(), slot.kid(),
+					new GreenCertificateEncoder(cborPrivateKey, slot.kid()));
+			slot.loaded().set(new Loaded(content, context));
+			log.info((previous == null ? "Loaded" : "Reloaded") + " DSC signing key " + slot.kid() + " for " + slot.issuer());
+		} catch (CoseException e) {
+			log.warn("Unsupported DSC key " + slot.path() + ", keeping the current key: " + e.getMessage());
+		}
+	}
+
+	private record Slot(String issuer, String kid, Path path, boolean active, AtomicReference<Loaded> loaded) {
+	}
+
+	private record Loaded(String content, SigningContext context) {
+	}
+}
@@ -0,0 +1,93 @@
+package co.entomo.gdhcn.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Watches the directories of a set of files and runs a callback when anything in
+ * them changes. Directories rather than files are watched so that replacements
+ * done by rename or symlink swap, as with mounted secrets, are noticed too;
+ * the callback is expected to detect whether the content really changed.
+ * Bursts of events are coalesced into a single callback.
+ */
+@Slf4j
+public class FileChangeWatcher implements Closeable {
+
+	private static final long SETTLE_MILLIS = 500;
+
+	private final String name;
+	private final Set<Path> directories = new LinkedHashSet<>();
+	private final Runnable onChange;
+	private WatchService watchService;
+	private Thread thread;
+
+	/**
+	 * @param name     the name of the watcher thread.
+	 * @param files    the files to watch.
+	 * @param onChange the callback run after a change.
+	 */
+	public FileChangeWatcher(String name, Collection<Path> files, Runnable onChange) {
+		this.name = name;
+		this.onChange = onChange;
+		for (Path file : files)
+			directories.add(file.toAbsolutePath().getParent());
+	}
+
+	/**
+	 * Registers the directories and starts the watcher thread.
+	 *
+	 * @throws IOException if a directory cannot be watched.
+	 */
+	public void start() throws IOException {
+		watchService = directories.iterator().next().getFileSystem().newWatchService();
+		for (Path directory : directories)
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = watchService.take();
+				key.pollEvents();
+				key.reset();
+				// Coalesce the burst of events a single rotation produces
+				while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					key.pollEvents();
+					key.reset();
+				}
+				try {
+					onChange.run();
+				} catch (RuntimeException e) {
+					log.warn(name + " change handler failed", e);
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (thread != null)
+			thread.interrupt();
+		if (watchService != null)
+			watchService.close();
+	}
+}
@@ -0,0 +1,270 @@
+package co.entomo.gdhcn.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import co.entomo.gdhcn.exceptions.GdhcnTrustListUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Outbound client for the GDHCN trust network. Every request gets a deadline,
+ * at most {@code maxConcurrent} exchanges are outstanding at once, a request
+ * still unanswered after the hedge delay is raced by a second copy, and
+ * transport errors and 5xx answers are retried with jittered exponential
+ * backoff. After {@code failureThreshold} consecutive requests that ended in
+ * a transport error or a 5xx answer the circuit opens and requests fail fast with a
+ * {@link GdhcnTrustListUnavailableException}, so callers fall back to cached
+ * keys; once {@code openDuration} has passed a single probe is let through.
+ */
+@Slf4j
+@Component
+public class GdhcnClient {
+
+	/**
+	 * State of the circuit breaker, reported as its ordinal by the
+	 * {@code gdhcn.client.circuit.state} gauge.
+	 */
+	public enum CircuitState {
+		CLOSED, HALF_OPEN, OPEN
+	}
+
+	@Autowired
+	private TngHttpClientManager tngHttpClientManager;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Value("${gdhcn.client.requestTimeout:5000}")
+	private long requestTimeout;
+	@Value("${gdhcn.client.maxConcurrent:16}")
+	private int maxConcurrent;
+	@Value("${gdhcn.client.maxAttempts:3}")
+	private int maxAttempts;
+	@Value("${gdhcn.client.retryBackoff:200}")
+	private long retryBackoff;
+	@Value("${gdhcn.client.hedgeDelay:1000}")
+	private long hedgeDelay;
+	@Value("${gdhcn.client.failureThreshold:5}")
+	private int failureThreshold;
+	@Value("${gdhcn.client.openDuration:30}")
+	private long openDuration;
+
+	private Semaphore permits;
+	private final AtomicReference<CircuitState> state = new AtomicReference<>(CircuitState.CLOSED);
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	private volatile long openedAt;
+	private Counter succeeded;
+	private Counter failed;
+	private Counter rejected;
+	private Counter shortCircuited;
+	private Counter retries;
+	private Counter hedges;
+
+	@PostConstruct
+	void initialize() {
+		permits = new Semaphore(maxConcurrent);
+		succeeded = requests("success");
+		failed = requests("failure");
+		rejected = requests("rejected");
+		shortCircuited = requests("short_circuited");
+		retries = Counter.builder("gdhcn.client.retries").description("GDHCN requests retried")
+				.register(meterRegistry);
+		hedges = Counter.builder("gdhcn.client.hedges").description("GDHCN requests hedged by a second copy")
+				.register(meterRegistry);
+		Gauge.builder("gdhcn.client.circuit.state", state, s -> s.get().ordinal())
+				.description("GDHCN circuit breaker state: 0 closed, 1 half open, 2 open").register(meterRegistry);
+		Gauge.builder("gdhcn.client.inflight", this, c -> c.maxConcurrent - c.permits.availablePermits())
+				.description("GDHCN exchanges awaiting a response").register(meterRegistry);
+	}
+
+	private Counter requests(String outcome) {
+		return Counter.builder("gdhcn.client.requests").tag("outcome", outcome)
+				.description("GDHCN requests by outcome").register(meterRegistry);
+	}
+
+	/**
+	 * Sends a request to the GDHCN.
+	 *
+	 * @param request the request; its timeout is replaced by the client deadline.
+	 * @return the response, whose body the caller must close; 5xx responses are
+	 *         returned once the retries are exhausted. The future fails with a
+	 *         {@link GdhcnTrustListUnavailableException} while the circuit is open
+	 *         or the bulkhead is full, or with the last transport error.
+	 */
+	public CompletableFuture<HttpResponse<InputStream>> send(HttpRequest request) {
+		if (!allowRequest()) {
+			shortCircuited.increment();
+			return CompletableFuture.failedFuture(new GdhcnTrustListUnavailableException("GDHCN circuit open"));
+		}
+		HttpRequest timed = HttpRequest.newBuilder(request, (name, value) -> true)
+				.timeout(Duration.ofMillis(requestTimeout)).build();
+		return attempt(timed, 1).whenComplete((response, error) -> {
+			if (error == null && response.statusCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+				succeeded.increment();
+				onSuccess();
+			} else if (unwrap(error) instanceof BulkheadFullException) {
+				// Local load says nothing about the GDHCN; a rejected probe lets the next request probe
+				state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.OPEN);
+			} else {
+				failed.increment();
+				onFailure();
+			}
+		});
+	}
+
+	/**
+	 * @return {@code true} while the circuit is open and no probe is due, when
+	 *         callers should serve cached data instead of calling the GDHCN.
+	 */
+	public boolean isOpen() {
+		return state.get() == CircuitState.OPEN
+				&& System.currentTimeMillis() - openedAt < TimeUnit.SECONDS.toMillis(openDuration);
+	}
+
+	/**
+	 * @return the current state of the circuit breaker.
+	 */
+	public CircuitState getState() {
+		return state.get();
+	}
+
+	private CompletableFuture<HttpResponse<InputStream>> attempt(HttpRequest request, int attempt) {
+		return hedged(request).handle((response, error) -> {
+			boolean retryable = error != null ? isRetryable(error)
+					: response.statusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+			if (!retryable || attempt >= maxAttempts)
+				return error == null ? CompletableFuture.completedFuture(response)
+						: CompletableFuture.<HttpResponse<InputStream>>failedFuture(error);
+			if (response != null)
+				discard(response);
+			retries.increment();
+			long backoff = retryBackoff << (attempt - 1);
+			long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+			log.debug("Retrying {} in {}ms after attempt {}", request.uri(), delay, attempt);
+			return CompletableFuture.supplyAsync(() -> request,
+					CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+					.thenCompose(r -> attempt(r, attempt + 1));
+		}).thenCompose(future -> future);
+	}
+
+	/**
+	 * Sends the request and, if no answer has come within the hedge delay, a
+	 * second copy. The first response wins and the other one is discarded; the
+	 * future fails once every copy sent so far has failed, with a transport
+	 * error rather than a bulkhead rejection if there was one.
+	 */
+	private CompletableFuture<HttpResponse<InputStream>> hedged(HttpRequest request) {
+		CompletableFuture<HttpResponse<InputStream>> primary = exchange(request);
+		if (hedgeDelay <= 0 || primary.isDone())
+			return primary;
+		CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+		AtomicInteger outstanding = new AtomicInteger(1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		race(primary, result, outstanding, failure);
+		CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS).execute(() -> {
+			if (result.isDone())
+				return;
+			hedges.increment();
+			outstanding.incrementAndGet();
+			race(exchange(request), result, outstanding, failure);
+		});
+		return result;
+	}
+
+	private void race(CompletableFuture<HttpResponse<InputStream>> copy,
+			CompletableFuture<HttpResponse<InputStream>> result, AtomicInteger outstanding,
+			AtomicReference<Throwable> failure) {
+		copy.whenComplete((response, error) -> {
+			if (error == null) {
+				if (!result.complete(response))
+					discard(response);
+				return;
+			}
+			// A rejected copy must not hide the transport error of another one from the circuit breaker
+			failure.accumulateAndGet(error, (current, next) ->
+					current == null || unwrap(current) instanceof BulkheadFullException ? next : current);
+			if (outstanding.decrementAndGet() == 0)
+				result.completeExceptionally(failure.get());
+		});
+	}
+
+	private CompletableFuture<HttpResponse<InputStream>> exchange(HttpRequest request) {
+		if (!permits.tryAcquire()) {
+			rejected.increment();
+			return CompletableFuture.failedFuture(new BulkheadFullException());
+		}
+		return tngHttpClientManager.getHttpClient().sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+				.whenComplete((response, error) -> permits.release());
+	}
+
+	private static boolean isRetryable(Throwable error) {
+		return unwrap(error) instanceof IOException;
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+	}
+
+	private static void discard(HttpResponse<InputStream> response) {
+		try {
+			response.body().close();
+		} catch (IOException e) {
+			log.debug("Discarding response body failed", e);
+		}
+	}
+
+	private boolean allowRequest() {
+		CircuitState current = state.get();
+		if (current == CircuitState.CLOSED)
+			return true;
+		if (current == CircuitState.OPEN && !isOpen() && state.compareAndSet(CircuitState.OPEN, CircuitState.HALF_OPEN)) {
+			log.info("GDHCN circuit half open, probing");
+			return true;
+		}
+		return false;
+	}
+
+	private void onSuccess() {
+		consecutiveFailures.set(0);
+		if (state.getAndSet(CircuitState.CLOSED) != CircuitState.CLOSED)
+			log.info("GDHCN circuit closed");
+	}
+
+	private void onFailure() {
+		if (state.get() == CircuitState.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+			openedAt = System.currentTimeMillis();
+			if (state.getAndSet(CircuitState.OPEN) != CircuitState.OPEN)
+				log.warn("GDHCN circuit open for " + openDuration + "s");
+		}
+	}
+
+	/**
+	 * Rejection of a request because {@code maxConcurrent} exchanges are already
+	 * outstanding. It is counted as rejected, and as neither a success nor a
+	 * failure of the GDHCN by the circuit breaker.
+	 */
+	private static class BulkheadFullException extends GdhcnTrustListUnavailableException {
+		BulkheadFullException() {
+			super("GDHCN bulkhead full");
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package co.entomo.gdhcn.util;
+
+import java.security.PublicKey;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import COSE.CoseException;
+import COSE.OneKey;
+import co.entomo.gdhcn.vo.GdhcnCertificateVO;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * In-memory store of DSC public keys published on the GDHCN trust list.
+ * Each certificate is parsed once into a ready-to-use {@link OneKey}, indexed by
+ * country and KID, and additionally by KID alone for certificates whose issuer
+ * claim is missing or does not match the publishing country.
+ * A {@link KidsRevokedEvent} is published whenever keys leave the store.
+ */
+@Slf4j
+@Component
+public class GdhcnKeyStore {
+
+	@Autowired
+	private CertificateUtils certificateUtils;
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	private final Map<String, Map<String, OneKey>> keysByCountry = new ConcurrentHashMap<>();
+	private final Map<String, OneKey> keysByKid = new ConcurrentHashMap<>();
+
+	/**
+	 * Brings the keys of a country in line with the given trust list by applying
+	 * only the difference: KIDs not seen before are parsed and added, KIDs no
+	 * longer published are revoked, and keys already held are left untouched.
+	 *
+	 * @param countryCode  the ISO 3166-1 alpha-2 country code of the trust list.
+	 * @param certificates the DSC certificates published for the country.
+	 */
+	public synchronized void index(String countryCode, List<GdhcnCertificateVO> certificates) {
+		Map<String, OneKey> keys = keysByCountry.computeIfAbsent(countryCode, c -> new ConcurrentHashMap<>());
+		Set<String> published = new HashSet<>();
+		int added = 0;
+		for (GdhcnCertificateVO vo : certificates) {
+			if (vo.getKid() == null || vo.getCertificate() == null)
+				continue;
+			published.add(vo.getKid());
+			if (keys.containsKey(vo.getKid()))
+				continue;
+			OneKey key = toOneKey(vo);
+			if (key != null) {
+				keys.put(vo.getKid(), key);
+				keysByKid.put(vo.getKid(), key);
+				added++;
+			}
+		}
+		Set<String> revoked = new HashSet<>();
+		for (Iterator<Map.Entry<String, OneKey>> it = keys.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, OneKey> entry = it.next();
+			if (!published.contains(entry.getKey())) {
+				it.remove();
+				keysByKid.remove(entry.getKey(), entry.getValue());
+				revoked.add(entry.getKey());
+			}
+		}
+		if (added > 0 || !revoked.isEmpty())
+			log.info("DSC keys of " + countryCode + ": " + added + " added, " + revoked.size() + " revoked, " + keys.size() + " held");
+		if (!revoked.isEmpty())
+			eventPublisher.publishEvent(new KidsRevokedEvent(countryCode, revoked));
+	}
+
+	/**
+	 * Drops every key of a country from the store.
+	 *
+	 * @param countryCode the ISO 3166-1 alpha-2 country code.
+	 */
+	public synchronized void evict(String countryCode) {
+		Map<String, OneKey> previous = keysByCountry.remove(countryCode);
+		if (previous != null) {
+			previous.forEach((kid, key) -> keysByKid.remove(kid, key));
+			eventPublisher.publishEvent(new KidsRevokedEvent(countryCode, Set.copyOf(previous.keySet())));
+		}
+	}
+
+	/**
+	 * Looks up the key published by a country under the given KID.
+	 *
+	 * @param countryCode the ISO 3166-1 alpha-2 country code.
+	 * @param kid         the Key Identifier (KID).
+	 * @return the {@link OneKey}, or {@code null} if the country has no such KID.
+	 */
+	public OneKey getKey(String countryCode, String kid) {
+		Map<String, OneKey> keys = keysByCountry.get(countryCode);
+		return keys == null ? null : keys.get(kid);
+	}
+
+	/**
+	 * Looks up a key by KID across every country held in the store.
+	 *
+	 * @param kid the Key Identifier (KID).
+	 * @return the {@link OneKey}, or {@code null} if no country has published the KID.
+	 */
+	public OneKey getKey(String kid) {
+		return keysByKid.get(kid);
+	}
+
+	/**
+	 * Looks up a key by KID across every country held in the store except one,
+	 * whose keys are no longer to be trusted.
+	 *
+	 * @param kid             the Key Identifier (KID).
+	 * @param excludedCountry the ISO 3166-1 alpha-2 country code whose keys are skipped.
+	 * @return the {@link OneKey}, or {@code null} if no other country has published the KID.
+	 */
+	public OneKey getKeyOutside(String kid, String excludedCountry) {
+		OneKey key = keysByKid.get(kid);
+		if (key == null)
+			return null;
+		Map<String, OneKey> excluded = keysByCountry.get(excludedCountry);
+		return excluded != null && excluded.get(kid) == key ? null : key;
+	}
+
+	private OneKey toOneKey(GdhcnCertificateVO vo) {
+		PublicKey publicKey = certificateUtils.getPublicKey(vo.getCertificate());
+		if (publicKey == null) {
+			log.warn("Skipping unparseable DSC " + vo.getKid() + " of " + vo.getCountry());
+			return null;
+		}
+		try {
+			return new OneKey(publicKey, null);
+		} catch (CoseException e) {
+			log.warn("Skipping unsupported DSC " + vo.getKid() + " of " + vo.getCountry() + ": " + e.getMessage());
+			return null;
+		}
+	}
+}
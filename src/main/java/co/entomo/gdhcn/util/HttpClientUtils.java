@@ -1,22 +1,47 @@
 package co.entomo.gdhcn.util;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import org.apache.http.HttpStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import COSE.OneKey;
+import co.entomo.gdhcn.exceptions.GdhcnTrustListUnavailableException;
 import co.entomo.gdhcn.exceptions.GdhcnValidationException;
 import co.entomo.gdhcn.vo.GdhcnCertificateVO;
+import co.entomo.gdhcn.vo.TrustListSnapshotEntry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -27,16 +52,112 @@ import lombok.extern.slf4j.Slf4j;
  * Utility class for making HTTP requests to fetch GDHCN certificates.
  * This class provides a method to retrieve a certificate from a GDHCN trust list
  * based on the country code and Key Identifier (KID).
+ *
+ * Trust lists are cached per country. A fresh entry is served directly, a stale
+ * entry is served while it is refreshed in the background, and entries close to
+ * expiry are refreshed ahead of time by a scheduler, so validations only wait on
+ * the network for a country that has never been fetched.
+ *
+ * The cache is warmed from the local trust list snapshot before the application
+ * reports ready, and the snapshot is served when a live fetch cannot reach the
+ * GDHCN network.
+ *
+ * Trust lists are fetched asynchronously through the {@link GdhcnClient}, so
+ * callers of the asynchronous lookups never hold a thread while the network
+ * responds. While its circuit is open, cached trust lists are served past their
+ * maximum staleness and are neither refreshed nor evicted.
+ *
+ * Concurrent fetches of the same country share one request, and countries or
+ * KIDs the network does not know are remembered for a short, backed-off period
+ * so that repeated lookups do not turn into outbound traffic.
  */
 @Slf4j
 @Component
 public class HttpClientUtils {
 
 	@Autowired
-	HttpClient httpClient;
+	GdhcnClient gdhcnClient;
+	@Autowired
+	MeterRegistry meterRegistry;
+	@Autowired
+	GdhcnKeyStore gdhcnKeyStore;
+	@Autowired
+	TrustListSnapshot trustListSnapshot;
 	@Value("${gdhcn.dev.url}")
 	private String gdhcnDevUrl;
-	private ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	@Value("${gdhcn.trustList.ttl:300}")
+	private long trustListTtl;
+	@Value("${gdhcn.trustList.refreshAhead:60}")
+	private long trustListRefreshAhead;
+	@Value("${gdhcn.trustList.maxStale:3600}")
+	private long trustListMaxStale;
+	@Value("${gdhcn.trustList.refreshInterval:30}")
+	private long trustListRefreshInterval;
+	@Value("${gdhcn.trustList.minRefreshInterval:60}")
+	private long trustListMinRefreshInterval;
+	@Value("${gdhcn.trustList.negativeTtl:30}")
+	private long negativeTtl;
+	@Value("${gdhcn.trustList.negativeMaxTtl:600}")
+	private long negativeMaxTtl;
+	@Value("${gdhcn.trustList.negativeMaxEntries:10000}")
+	private int negativeMaxEntries;
+	@Value("${gdhcn.trustList.awaitTimeout:30000}")
+	private long awaitTimeout;
+	@Value("${gdhcn.client.maxConcurrent:16}")
+	private int maxConcurrent;
+
+	private static final Pattern COUNTRY_CODE = Pattern.compile("[A-Za-z]{2}");
+
+	private final Map<String, TrustListEntry> trustListCache = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<TrustListEntry>> inFlight = new ConcurrentHashMap<>();
+	private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+	private NegativeCache negativeCache;
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+	private ScheduledExecutorService refreshScheduler;
+	private ExecutorService fetchExecutor;
+
+	/**
+	 * Warms the cache from the trust list snapshot, starts the background
+	 * refresh-ahead scheduler and registers the cache metrics.
+	 */
+	@PostConstruct
+	void initializeTrustListCache() {
+		negativeCache = new NegativeCache(negativeTtl, negativeMaxTtl, negativeMaxEntries);
+		trustListSnapshot.load().forEach((countryCode, snapshot) -> {
+			if (trustListSnapshot.getFallback(countryCode) == null) {
+				log.info("Ignoring trust list snapshot for " + countryCode + ", older than its maximum age");
+				return;
+			}
+			gdhcnKeyStore.index(countryCode, snapshot.getCertificates());
+			trustListCache.put(countryCode, fetched(snapshot.getCertificates(), snapshot.getFetchedAt(),
+					snapshot.getEtag(), snapshot.getLastModified(), snapshot.getContentHash()));
+		});
+		refreshScheduler = Executors.newScheduledThreadPool(2, daemonThreadFactory("gdhcn-trustlist-"));
+		// No more responses can be outstanding than the client bulkhead admits; past that, the HTTP client thread reads
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(maxConcurrent), daemonThreadFactory("gdhcn-trustlist-fetch-"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		fetchExecutor = executor;
+		refreshScheduler.scheduleWithFixedDelay(this::refreshAhead, trustListRefreshInterval,
+				trustListRefreshInterval, TimeUnit.SECONDS);
+		FunctionCounter.builder("gdhcn.trustlist.cache.requests", cacheHits, AtomicLong::doubleValue)
+				.tag("result", "hit").description("Trust list cache hits").register(meterRegistry);
+		FunctionCounter.builder("gdhcn.trustlist.cache.requests", cacheMisses, AtomicLong::doubleValue)
+				.tag("result", "miss").description("Trust list cache misses").register(meterRegistry);
+		Gauge.builder("gdhcn.trustlist.cache.size", trustListCache, Map::size)
+				.description("Countries held in the trust list cache").register(meterRegistry);
+		Gauge.builder("gdhcn.trustlist.negative.size", negativeCache, NegativeCache::size)
+				.description("Unknown countries and kids held in the negative cache").register(meterRegistry);
+	}
+
+	@PreDestroy
+	void shutdownTrustListCache() {
+		refreshScheduler.shutdownNow();
+		fetchExecutor.shutdownNow();
+	}
+
 	/**
 	 * Fetches a GDHCN certificate from the trust list for a specific country and KID.
 	 *
@@ -47,38 +168,394 @@ public class HttpClientUtils {
 	 */
 	public GdhcnCertificateVO getGdhcnCertificate(String countryCode, String kid) throws GdhcnValidationException
 	{
-		log.info("Fetching url "+gdhcnDevUrl+"/trustList/certificate?group=DSC&country="+countryCode);
+		return findKid(getTrustList(countryCode), kid);
+	}
+
+	/**
+	 * Resolves the public key used to verify a signature from the pre-parsed key store.
+	 * The issuing country's trust list is consulted first; when the issuer is missing,
+	 * unknown, or does not publish the KID, the KID is looked up across all countries.
+	 *
+	 * @param countryCode the ISO 3166-1 alpha-2 country code from the {@code iss} claim, may be {@code null}.
+	 * @param kid the Key Identifier (KID) from the protected header.
+	 * @return the {@link OneKey} to verify the signature with.
+	 * @throws GdhcnValidationException if no published key matches the KID.
+	 */
+	public OneKey getSigningKey(String countryCode, String kid) throws GdhcnValidationException
+	{
+		return await(getSigningKeyAsync(countryCode, kid));
+	}
+
+	/**
+	 * Non-blocking variant of {@link #getSigningKey(String, String)}. Keys of cached
+	 * countries are returned as completed futures; otherwise the trust list is
+	 * fetched through the {@link GdhcnClient} and no thread waits on the network.
+	 *
+	 * @param countryCode the ISO 3166-1 alpha-2 country code from the {@code iss} claim, may be {@code null}.
+	 * @param kid the Key Identifier (KID) from the protected header.
+	 * @return the {@link OneKey} to verify the signature with, or a future failed with a {@link GdhcnValidationException}.
+	 */
+	public CompletableFuture<OneKey> getSigningKeyAsync(String countryCode, String kid)
+	{
+		if (kid == null)
+			return CompletableFuture.failedFuture(new GdhcnValidationException("Kid not present in CWT"));
+		if (countryCode == null)
+			return resolveFromGlobalIndex(kid, null, null);
+		return getTrustListAsync(countryCode)
+				.handle((certificates, error) -> error == null ? null : validationError(error))
+				.thenCompose(countryError -> {
+					// Keys of a country whose trust list could not be served are not trusted any longer
+					if (countryError != null)
+						return resolveFromGlobalIndex(kid, countryCode, countryError);
+					OneKey key = gdhcnKeyStore.getKey(countryCode, kid);
+					if (key != null)
+						return CompletableFuture.completedFuture(key);
+					return refreshForUnknownKid(countryCode, kid).thenCompose(refreshed -> refreshed != null
+							? CompletableFuture.completedFuture(refreshed)
+							: resolveFromGlobalIndex(kid, null, null));
+				});
+	}
+
+	private CompletableFuture<OneKey> resolveFromGlobalIndex(String kid, String excludedCountry,
+			GdhcnValidationException countryError)
+	{
+		OneKey key = excludedCountry == null ? gdhcnKeyStore.getKey(kid) : gdhcnKeyStore.getKeyOutside(kid, excludedCountry);
+		if (key != null) {
+			log.info("Kid " + kid + " resolved from global index");
+			return CompletableFuture.completedFuture(key);
+		}
+		return CompletableFuture.failedFuture(countryError != null ? countryError
+				: new GdhcnValidationException("Kid " + kid + " not found in GDHCN Network"));
+	}
+
+	/**
+	 * Returns the DSC trust list of a country, served from the cache when possible.
+	 * Entries older than the TTL but within the stale window are returned as is
+	 * and refreshed asynchronously.
+	 *
+	 * @param countryCode the ISO 3166-1 alpha-2 country code.
+	 * @return the list of DSC certificates published for the country.
+	 * @throws GdhcnValidationException if the trust list cannot be fetched.
+	 */
+	public List<GdhcnCertificateVO> getTrustList(String countryCode) throws GdhcnValidationException
+	{
+		return await(getTrustListAsync(countryCode));
+	}
+
+	/**
+	 * Non-blocking variant of {@link #getTrustList(String)}.
+	 *
+	 * @param countryCode the ISO 3166-1 alpha-2 country code.
+	 * @return the list of DSC certificates, or a future failed with a {@link GdhcnValidationException}.
+	 */
+	public CompletableFuture<List<GdhcnCertificateVO>> getTrustListAsync(String countryCode)
+	{
+		// The code ends up in the trust list URL, so anything but an alpha-2 code is refused up front
+		if (countryCode == null || !COUNTRY_CODE.matcher(countryCode).matches())
+			return CompletableFuture.failedFuture(new GdhcnValidationException("Invalid country code " + countryCode));
+		long now = System.currentTimeMillis();
+		TrustListEntry entry = trustListCache.get(countryCode);
+		boolean circuitOpen = gdhcnClient.isOpen();
+		if (entry != null && (circuitOpen || now < entry.servableUntil())) {
+			cacheHits.incrementAndGet();
+			if (!circuitOpen && now >= entry.refreshAfter()) {
+				log.info("Serving stale trust list for " + countryCode + ", refreshing in background");
+				scheduleRefresh(countryCode);
+			}
+			return CompletableFuture.completedFuture(entry.certificates());
+		}
+		cacheMisses.incrementAndGet();
+		if (negativeCache.isCached(countryKey(countryCode)))
+			return CompletableFuture.failedFuture(new GdhcnValidationException("Country "+countryCode+" not found"));
+		return refresh(countryCode).thenApply(TrustListEntry::certificates).exceptionallyCompose(error -> {
+			GdhcnValidationException e = validationError(error);
+			TrustListSnapshotEntry snapshot = e instanceof GdhcnTrustListUnavailableException
+					? trustListSnapshot.getFallback(countryCode) : null;
+			if (snapshot == null)
+				return CompletableFuture.failedFuture(e);
+			log.warn("GDHCN unreachable, serving trust list snapshot for " + countryCode + ": " + e.getMessage());
+			// Cached for one TTL so that the outage is not hit again by every request
+			long servableUntil = Math.min(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(trustListTtl),
+					trustListSnapshot.fallbackUntil(snapshot));
+			TrustListEntry fallback = new TrustListEntry(snapshot.getCertificates(), snapshot.getFetchedAt(),
+					snapshot.getEtag(), snapshot.getLastModified(), snapshot.getContentHash(), servableUntil, servableUntil);
+			gdhcnKeyStore.index(countryCode, snapshot.getCertificates());
+			trustListCache.compute(countryCode, (country, current) ->
+					current != null && current.fetchedAt() > fallback.fetchedAt() ? current : fallback);
+			return CompletableFuture.completedFuture(snapshot.getCertificates());
+		});
+	}
+
+	/**
+	 * @return the number of trust list lookups served from the cache.
+	 */
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * @return the number of trust list lookups that had to go to the network.
+	 */
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	/**
+	 * Refetches a warm country whose trust list does not contain the KID, in case
+	 * the key was published after the last fetch. Refetches are limited by the
+	 * minimum refresh interval, and KIDs still unknown afterwards are negatively cached.
+	 */
+	private CompletableFuture<OneKey> refreshForUnknownKid(String countryCode, String kid)
+	{
+		String negativeKey = countryKey(countryCode) + "/" + kid;
+		if (negativeCache.isCached(negativeKey))
+			return CompletableFuture.completedFuture(null);
+		TrustListEntry entry = trustListCache.get(countryCode);
+		CompletableFuture<TrustListEntry> refreshed = CompletableFuture.completedFuture(entry);
+		if (entry == null || entry.ageSeconds(System.currentTimeMillis()) >= trustListMinRefreshInterval) {
+			refreshed = refresh(countryCode).exceptionally(error -> {
+				log.warn("Refresh of trust list for " + countryCode + " failed: " + validationError(error).getMessage());
+				return null;
+			});
+		}
+		return refreshed.thenApply(ignored -> {
+			OneKey key = gdhcnKeyStore.getKey(countryCode, kid);
+			if (key == null)
+				negativeCache.record(negativeKey);
+			return key;
+		});
+	}
+
+	/**
+	 * Fetches the trust list of a country and publishes it to the cache, key store
+	 * and snapshot. Callers arriving while a fetch of the same country is in flight
+	 * share that fetch instead of starting their own.
+	 */
+	private CompletableFuture<TrustListEntry> refresh(String countryCode)
+	{
+		CompletableFuture<TrustListEntry> flight = new CompletableFuture<>();
+		CompletableFuture<TrustListEntry> existing = inFlight.putIfAbsent(countryCode, flight);
+		if (existing != null)
+			return existing;
+		TrustListEntry previous = trustListCache.get(countryCode);
+		CompletableFuture<TrustListEntry> fetch;
 		try {
-			HttpRequest request = HttpRequest.newBuilder()
-			        .uri(URI.create(gdhcnDevUrl+"/trustList/certificate?group=DSC&country="+countryCode))
-			        .GET()
-			        .build();
+			fetch = fetchTrustList(countryCode, previous);
+		} catch (RuntimeException e) {
+			// Nobody would complete the flight, and every later caller would join it
+			inFlight.remove(countryCode, flight);
+			flight.completeExceptionally(e);
+			return flight;
+		}
+		fetch.whenComplete((entry, error) -> {
+			try {
+				if (error == null) {
+					boolean changed = previous == null || entry.certificates() != previous.certificates();
+					if (changed)
+						gdhcnKeyStore.index(countryCode, entry.certificates());
+					trustListCache.put(countryCode, entry);
+					TrustListSnapshotEntry snapshot = new TrustListSnapshotEntry(entry.fetchedAt(), entry.etag(),
+							entry.lastModified(), entry.contentHash(), entry.certificates());
+					// The snapshot file is only rewritten when the list itself changed
+					if (changed)
+						trustListSnapshot.save(countryCode, snapshot);
+					else
+						trustListSnapshot.confirm(countryCode, snapshot);
+					negativeCache.clear(countryKey(countryCode));
+					flight.complete(entry);
+				} else {
+					GdhcnValidationException e = validationError(error);
+					if (!(e instanceof GdhcnTrustListUnavailableException))
+						negativeCache.record(countryKey(countryCode));
+					flight.completeExceptionally(e);
+				}
+			} catch (RuntimeException e) {
+				flight.completeExceptionally(e);
+			} finally {
+				inFlight.remove(countryCode, flight);
+			}
+		});
+		return flight;
+	}
 
-			HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-			log.info("Response statuc code "+response.statusCode());
-			if(response.statusCode() == HttpStatus.SC_OK)
-			{
-				log.info("Response Body: "+response.body());				
-				List<GdhcnCertificateVO> voList = OBJECT_MAPPER.readValue(response.body(), new TypeReference<List<GdhcnCertificateVO>>() {});
-				if(kid !=null){
-					for (GdhcnCertificateVO gdhcnCertificateVO : voList) {
-						if(gdhcnCertificateVO.getKid().contentEquals(kid)){
-							log.info("Kid Identified in GDHCN Network");
-							return gdhcnCertificateVO;
+	private <T> T await(CompletableFuture<T> future) throws GdhcnValidationException
+	{
+		try {
+			return future.get(awaitTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GdhcnTrustListUnavailableException(e.getLocalizedMessage(), e);
+		} catch (ExecutionException e) {
+			throw validationError(e.getCause());
+		} catch (TimeoutException e) {
+			throw new GdhcnTrustListUnavailableException("No trust list within " + awaitTimeout + "ms", e);
+		}
+	}
+
+	private static GdhcnValidationException validationError(Throwable error)
+	{
+		Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		if (cause instanceof GdhcnValidationException e)
+			return e;
+		return new GdhcnValidationException(cause);
+	}
+
+	private static String countryKey(String countryCode)
+	{
+		return "country:" + countryCode;
+	}
+
+	private void scheduleRefresh(String countryCode)
+	{
+		if (!refreshing.add(countryCode))
+			return;
+		refresh(countryCode).whenComplete((entry, error) -> {
+			if (error != null)
+				log.warn("Background refresh of trust list for " + countryCode + " failed: "
+						+ validationError(error).getMessage());
+			refreshing.remove(countryCode);
+		});
+	}
+
+	private void refreshAhead()
+	{
+		if (gdhcnClient.isOpen())
+			return;
+		long now = System.currentTimeMillis();
+		trustListCache.forEach((countryCode, entry) -> {
+			if (now >= entry.servableUntil()) {
+				if (trustListCache.remove(countryCode, entry))
+					gdhcnKeyStore.evict(countryCode);
+			} else if (now >= entry.refreshAfter() - TimeUnit.SECONDS.toMillis(trustListRefreshAhead)) {
+				scheduleRefresh(countryCode);
+			}
+		});
+	}
+
+	/**
+	 * Fetches the DSC trust list of a country through the {@link GdhcnClient}.
+	 * When a previous fetch is known the request is made conditional on its ETag
+	 * and Last-Modified validators; a 304 reuses the previous list without reading
+	 * a body. Otherwise the body is stream-parsed on the fetch executor while it is
+	 * hashed, and a hash matching the previous one keeps the previous list so the
+	 * key index is left untouched.
+	 */
+	private CompletableFuture<TrustListEntry> fetchTrustList(String countryCode, TrustListEntry previous)
+	{
+		log.info("Fetching url "+gdhcnDevUrl+"/trustList/certificate?group=DSC&country="+countryCode);
+		HttpRequest.Builder builder = HttpRequest.newBuilder()
+		        .uri(URI.create(gdhcnDevUrl+"/trustList/certificate?group=DSC&country="+countryCode))
+		        .GET();
+		if (previous != null && previous.etag() != null)
+			builder.header("If-None-Match", previous.etag());
+		if (previous != null && previous.lastModified() != null)
+			builder.header("If-Modified-Since", previous.lastModified());
+
+		return gdhcnClient.send(builder.build())
+				.handleAsync((response, error) -> {
+					try {
+						if (error != null) {
+							Throwable cause = error instanceof CompletionException && error.getCause() != null
+									? error.getCause() : error;
+							if (cause instanceof GdhcnTrustListUnavailableException unavailable)
+								throw unavailable;
+							throw new GdhcnTrustListUnavailableException(cause.getLocalizedMessage(), cause);
 						}
+						return readTrustList(countryCode, previous, response);
+					} catch (GdhcnValidationException e) {
+						throw new CompletionException(e);
 					}
+				}, fetchExecutor);
+	}
+
+	private TrustListEntry readTrustList(String countryCode, TrustListEntry previous, HttpResponse<InputStream> response)
+			throws GdhcnValidationException
+	{
+		log.info("Response statuc code "+response.statusCode());
+		long now = System.currentTimeMillis();
+		String etag = response.headers().firstValue("ETag").orElse(null);
+		String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+		try (InputStream body = response.body()) {
+			if(response.statusCode() == HttpStatus.SC_NOT_MODIFIED && previous != null)
+			{
+				log.info("Trust list of "+countryCode+" not modified");
+				return fetched(previous.certificates(), now,
+						etag != null ? etag : previous.etag(),
+						lastModified != null ? lastModified : previous.lastModified(),
+						previous.contentHash());
+			}
+			if(response.statusCode() == HttpStatus.SC_OK)
+			{
+				MessageDigest digest = sha256();
+				List<GdhcnCertificateVO> certificates = TrustListParser.parse(new DigestInputStream(body, digest));
+				String contentHash = Base64.getEncoder().encodeToString(digest.digest());
+				// A server without validators returns the body on every refresh; an unchanged one is
+				// parsed as it streams by, but its list is dropped so the key index is left untouched
+				if (previous != null && contentHash.equals(previous.contentHash())) {
+					log.info("Trust list of "+countryCode+" unchanged");
+					return fetched(previous.certificates(), now, etag, lastModified, contentHash);
 				}
-				return null;
-				//log.info("Kid Not found in GDHCN Network. Returning first available");
-				//return voList.get(0);
+				log.info("Parsed "+certificates.size()+" certificates for "+countryCode);
+				return fetched(certificates, now, etag, lastModified, contentHash);
 			}
 		} catch (IOException e) {
-			e.printStackTrace();
-			throw new GdhcnValidationException(e.getLocalizedMessage());
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-			throw new GdhcnValidationException(e.getLocalizedMessage());
+			throw new GdhcnTrustListUnavailableException(e.getLocalizedMessage(), e);
+		}
+		// Only an answer that the country does not exist is remembered as such; authentication,
+		// rate limiting and server errors say nothing about the country and fall back to the snapshot
+		if(response.statusCode() == HttpStatus.SC_NOT_FOUND || response.statusCode() == HttpStatus.SC_GONE)
+			throw new GdhcnValidationException("Country "+countryCode+" not found");
+		throw new GdhcnTrustListUnavailableException("GDHCN responded "+response.statusCode());
+	}
+
+	private static MessageDigest sha256()
+	{
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private GdhcnCertificateVO findKid(List<GdhcnCertificateVO> voList, String kid)
+	{
+		if(kid !=null){
+			for (GdhcnCertificateVO gdhcnCertificateVO : voList) {
+				if(gdhcnCertificateVO.getKid().contentEquals(kid)){
+					log.info("Kid Identified in GDHCN Network");
+					return gdhcnCertificateVO;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static CustomizableThreadFactory daemonThreadFactory(String prefix) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+		threadFactory.setDaemon(true);
+		return threadFactory;
+	}
+
+	/**
+	 * Creates the cache entry of a trust list fetched from the network, due for a
+	 * refresh after the TTL and served while stale up to the maximum staleness.
+	 */
+	private TrustListEntry fetched(List<GdhcnCertificateVO> certificates, long fetchedAt, String etag,
+			String lastModified, String contentHash)
+	{
+		return new TrustListEntry(certificates, fetchedAt, etag, lastModified, contentHash,
+				fetchedAt + TimeUnit.SECONDS.toMillis(trustListTtl),
+				fetchedAt + TimeUnit.SECONDS.toMillis(trustListTtl + trustListMaxStale));
+	}
+
+	/**
+	 * A cached trust list. It is refreshed in the background from {@code refreshAfter}
+	 * and, while the circuit is closed, no longer served from {@code servableUntil}.
+	 */
+	private record TrustListEntry(List<GdhcnCertificateVO> certificates, long fetchedAt, String etag,
+			String lastModified, String contentHash, long refreshAfter, long servableUntil) {
+		long ageSeconds(long now) {
+			return (now - fetchedAt) / 1000L;
 		}
-		throw new GdhcnValidationException("Country "+countryCode+" not found");
 	}
 }
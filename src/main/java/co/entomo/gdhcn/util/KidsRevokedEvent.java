@@ -0,0 +1,16 @@
+package co.entomo.gdhcn.util;
+
+import java.util.Set;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Published by {@link GdhcnKeyStore} when DSC keys stop being trusted, either
+ * because the country withdrew them from the trust list or because the
+ * country's keys were dropped from the store.
+ *
+ * @param countryCode the ISO 3166-1 alpha-2 country code.
+ * @param kids        the Key Identifiers no longer trusted.
+ */
+public record KidsRevokedEvent(String countryCode, Set<String> kids) {
+}
@@ -0,0 +1,78 @@
+package co.entomo.gdhcn.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Bounded cache of lookups known to fail, such as unknown countries or KIDs.
+ * Each consecutive failure of a key doubles the time it stays cached, from the
+ * base TTL up to the maximum TTL. Once the cache is full, new failures are not
+ * recorded until expired entries have been purged.
+ */
+public class NegativeCache {
+
+	private final long baseTtlMillis;
+	private final long maxTtlMillis;
+	private final int maxEntries;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * @param baseTtlSeconds time a key stays cached after its first failure.
+	 * @param maxTtlSeconds  upper bound of the backoff.
+	 * @param maxEntries     maximum number of keys held at once.
+	 */
+	public NegativeCache(long baseTtlSeconds, long maxTtlSeconds, int maxEntries) {
+		this.baseTtlMillis = baseTtlSeconds * 1000L;
+		this.maxTtlMillis = maxTtlSeconds * 1000L;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @param key the lookup key.
+	 * @return {@code true} if the key failed recently and should not be looked up again yet.
+	 */
+	public boolean isCached(String key) {
+		Entry entry = entries.get(key);
+		return entry != null && entry.until() > System.currentTimeMillis();
+	}
+
+	/**
+	 * Records a failed lookup, extending the backoff of a key that failed before.
+	 *
+	 * @param key the lookup key.
+	 */
+	public void record(String key) {
+		long now = System.currentTimeMillis();
+		if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+			entries.values().removeIf(entry -> entry.until() <= now);
+			if (entries.size() >= maxEntries)
+				return;
+		}
+		entries.compute(key, (k, previous) -> {
+			int failures = previous == null ? 1 : Math.min(previous.failures() + 1, 30);
+			long ttl = Math.min(baseTtlMillis << (failures - 1), maxTtlMillis);
+			return new Entry(failures, now + ttl);
+		});
+	}
+
+	/**
+	 * Forgets a key after a successful lookup.
+	 *
+	 * @param key the lookup key.
+	 */
+	public void clear(String key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * @return the number of keys currently held.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	private record Entry(int failures, long until) {
+	}
+}
@@ -0,0 +1,68 @@
+package co.entomo.gdhcn.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+
+import co.entomo.gdhcn.vo.GdhcnCertificateVO;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Streaming parser for GDHCN trust list responses.
+ * The response is read token by token and only the fields needed to build the
+ * key index (kid, country, group and certificate) are kept; every other field,
+ * including properties and signatures, is skipped without being materialised.
+ */
+public final class TrustListParser {
+
+	private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+			.disable(StreamReadFeature.AUTO_CLOSE_SOURCE).build();
+
+	private TrustListParser() {
+	}
+
+	/**
+	 * Parses a trust list JSON array from the given stream. The stream is not closed.
+	 *
+	 * @param inputStream the response body.
+	 * @return the certificates, holding only kid, country, group and certificate.
+	 * @throws IOException if the stream cannot be read or is not a JSON array of objects.
+	 */
+	public static List<GdhcnCertificateVO> parse(InputStream inputStream) throws IOException {
+		List<GdhcnCertificateVO> certificates = new ArrayList<>();
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY)
+				throw new IOException("Trust list is not a JSON array");
+			JsonToken token;
+			while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+				certificates.add(parseCertificate(parser));
+			}
+			if (token != JsonToken.END_ARRAY)
+				throw new IOException("Unexpected " + token + " in trust list");
+		}
+		return certificates;
+	}
+
+	private static GdhcnCertificateVO parseCertificate(JsonParser parser) throws IOException {
+		GdhcnCertificateVO vo = new GdhcnCertificateVO();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.currentName();
+			parser.nextToken();
+			switch (field) {
+				case "kid" -> vo.setKid(parser.getValueAsString());
+				case "country" -> vo.setCountry(parser.getValueAsString());
+				case "group" -> vo.setGroup(parser.getValueAsString());
+				case "certificate" -> vo.setCertificate(parser.getValueAsString());
+				default -> parser.skipChildren();
+			}
+		}
+		return vo;
+	}
+}
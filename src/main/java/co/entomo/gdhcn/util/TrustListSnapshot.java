@@ -0,0 +1,130 @@
+package co.entomo.gdhcn.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import co.entomo.gdhcn.vo.TrustListSnapshotEntry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Keeps the last trust list successfully fetched for each country in a local
+ * snapshot file. The snapshot warms the trust list cache at startup and serves
+ * as a fallback, up to a maximum age, while the GDHCN network is unreachable.
+ */
+@Slf4j
+@Component
+public class TrustListSnapshot {
+
+	@Value("${gdhcn.trustList.snapshot:}")
+	private String snapshotFile;
+	@Value("${gdhcn.trustList.snapshotMaxAge:86400}")
+	private long snapshotMaxAge;
+	private ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private final Map<String, TrustListSnapshotEntry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Reads the snapshot file, if configured and present.
+	 *
+	 * @return the snapshot entries keyed by country code, or an empty map.
+	 */
+	public Map<String, TrustListSnapshotEntry> load() {
+		if (!StringUtils.hasLength(snapshotFile) || !Files.exists(Paths.get(snapshotFile)))
+			return Collections.emptyMap();
+		try {
+			Map<String, TrustListSnapshotEntry> loaded = OBJECT_MAPPER.readValue(Paths.get(snapshotFile).toFile(),
+					new TypeReference<Map<String, TrustListSnapshotEntry>>() {});
+			entries.putAll(loaded);
+			log.info("Loaded trust list snapshot for " + loaded.keySet());
+			return loaded;
+		} catch (IOException e) {
+			log.warn("Unable to read trust list snapshot " + snapshotFile + ": " + e.getMessage());
+			return Collections.emptyMap();
+		}
+	}
+
+	/**
+	 * Records a freshly fetched trust list and rewrites the snapshot file atomically.
+	 *
+	 * @param countryCode the ISO 3166-1 alpha-2 country code.
+	 * @param entry       the trust list fetched for the country with its fetch time and validators.
+	 */
+	public void save(String countryCode, TrustListSnapshotEntry entry) {
+		entries.put(countryCode, entry);
+		if (!StringUtils.hasLength(snapshotFile))
+			return;
+		synchronized (this) {
+			Path target = Paths.get(snapshotFile).toAbsolutePath();
+			Path temp = null;
+			try {
+				temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+				OBJECT_MAPPER.writeValue(temp.toFile(), new TreeMap<>(entries));
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				log.warn("Unable to write trust list snapshot " + snapshotFile + ": " + e.getMessage());
+				deleteQuietly(temp);
+			}
+		}
+	}
+
+	/**
+	 * Records that the trust list of a country was confirmed unchanged. Only the
+	 * fetch time and validators held in memory are updated; the snapshot file is
+	 * rewritten with them by the next {@link #save(String, TrustListSnapshotEntry)}.
+	 *
+	 * @param countryCode the ISO 3166-1 alpha-2 country code.
+	 * @param entry       the confirmed trust list with its fetch time and validators.
+	 */
+	public void confirm(String countryCode, TrustListSnapshotEntry entry) {
+		entries.put(countryCode, entry);
+	}
+
+	private void deleteQuietly(Path path) {
+		if (path == null)
+			return;
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			log.warn("Unable to delete " + path + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the snapshot of a country if it is recent enough to be trusted as a
+	 * fallback for a failed live fetch.
+	 *
+	 * @param countryCode the ISO 3166-1 alpha-2 country code.
+	 * @return the snapshot entry, or {@code null} if none is available within the maximum age.
+	 */
+	public TrustListSnapshotEntry getFallback(String countryCode) {
+		TrustListSnapshotEntry entry = entries.get(countryCode);
+		if (entry == null || System.currentTimeMillis() >= fallbackUntil(entry))
+			return null;
+		return entry;
+	}
+
+	/**
+	 * @param entry a snapshot entry.
+	 * @return the time in epoch milliseconds from which the entry is too old to serve as a fallback.
+	 */
+	public long fallbackUntil(TrustListSnapshotEntry entry) {
+		return entry.getFetchedAt() + TimeUnit.SECONDS.toMillis(snapshotMaxAge);
+	}
+}
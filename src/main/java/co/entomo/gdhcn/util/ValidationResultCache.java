@@ -0,0 +1,156 @@
+package co.entomo.gdhcn.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import co.entomo.gdhcn.vo.SHLinkContent;
+import co.entomo.gdhcn.vo.StepStatus;
+import co.entomo.gdhcn.vo.ValidateCwtResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Bounded LRU cache of successful validations, keyed by the SHA-256 of the QR
+ * code content. An entry lives for the configured TTL, but never beyond the
+ * expiry of its Smart Health Link nor beyond one trust list TTL, and is dropped
+ * as soon as the KID that signed it is revoked. Responses are copied in and
+ * out of the cache, so callers are free to modify the ones they hold.
+ */
+@Slf4j
+@Component
+public class ValidationResultCache {
+
+	@Value("${gdhcn.validationCache.maxEntries:10000}")
+	private int maxEntries;
+	@Value("${gdhcn.validationCache.ttl:300}")
+	private long ttl;
+	@Value("${gdhcn.trustList.ttl:300}")
+	private long trustListTtl;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private Map<String, Entry> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	@PostConstruct
+	void initialize() {
+		entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		FunctionCounter.builder("gdhcn.validation.cache.requests", hits, AtomicLong::doubleValue)
+				.tag("result", "hit").description("Validation result cache hits").register(meterRegistry);
+		FunctionCounter.builder("gdhcn.validation.cache.requests", misses, AtomicLong::doubleValue)
+				.tag("result", "miss").description("Validation result cache misses").register(meterRegistry);
+	}
+
+	/**
+	 * Computes the cache key of a QR code content.
+	 *
+	 * @param qrCodeContent the encoded QR code content.
+	 * @return the Base64 SHA-256 of the content.
+	 */
+	public String key(String qrCodeContent) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(qrCodeContent.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(hash);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param key the cache key of a QR code content.
+	 * @return the cached validation, or {@code null} if absent or expired.
+	 */
+	public ValidateCwtResponse get(String key) {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.expiresAt() > now) {
+				hits.incrementAndGet();
+				return copy(entry.response());
+			}
+			if (entry != null)
+				entries.remove(key);
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Caches a successful validation.
+	 *
+	 * @param key      the cache key of the QR code content.
+	 * @param kid      the KID of the key that verified the signature.
+	 * @param shlExp   the Smart Health Link expiry in epoch milliseconds, or {@code null} if it does not expire.
+	 * @param response the validation response.
+	 */
+	public void put(String key, String kid, Long shlExp, ValidateCwtResponse response) {
+		long now = System.currentTimeMillis();
+		long expiresAt = now + Math.min(ttl, trustListTtl) * 1000L;
+		if (shlExp != null)
+			expiresAt = Math.min(expiresAt, shlExp);
+		if (expiresAt <= now)
+			return;
+		synchronized (this) {
+			entries.put(key, new Entry(kid, expiresAt, copy(response)));
+		}
+	}
+
+	private static ValidateCwtResponse copy(ValidateCwtResponse response) {
+		Map<Integer, StepStatus> validationStatus = null;
+		if (response.getValidationStatus() != null) {
+			validationStatus = new HashMap<>();
+			for (Map.Entry<Integer, StepStatus> entry : response.getValidationStatus().entrySet()) {
+				StepStatus status = entry.getValue();
+				validationStatus.put(entry.getKey(), status == null ? null : new StepStatus(status.getStep(),
+						status.getStatus(), status.getCode(), status.getDescription(), status.getError()));
+			}
+		}
+		SHLinkContent shLinkContent = response.getShLinkContent();
+		return ValidateCwtResponse.builder()
+				.validationStatus(validationStatus)
+				.shLinkContent(shLinkContent == null ? null : new SHLinkContent(shLinkContent.getUrl(),
+						shLinkContent.getFlag(), shLinkContent.getExp(), shLinkContent.getKey(), shLinkContent.getLabel()))
+				.build();
+	}
+
+	/**
+	 * Drops every validation verified with a KID that is no longer trusted.
+	 *
+	 * @param event the revoked KIDs.
+	 */
+	@EventListener
+	public void onKidsRevoked(KidsRevokedEvent event) {
+		int removed;
+		synchronized (this) {
+			int before = entries.size();
+			entries.values().removeIf(entry -> event.kids().contains(entry.kid()));
+			removed = before - entries.size();
+		}
+		if (removed > 0)
+			log.info("Invalidated " + removed + " cached validations for revoked kids of " + event.countryCode());
+	}
+
+	private record Entry(String kid, long expiresAt, ValidateCwtResponse response) {
+	}
+}
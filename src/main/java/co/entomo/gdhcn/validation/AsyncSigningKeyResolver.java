@@ -0,0 +1,23 @@
+package co.entomo.gdhcn.validation;
+
+import java.util.concurrent.CompletableFuture;
+
+import COSE.OneKey;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Non-blocking lookup of the DSC public key of an issuer and KID, used by
+ * {@link ValidationPipeline#validateAsync(String, AsyncSigningKeyResolver)}.
+ */
+@FunctionalInterface
+public interface AsyncSigningKeyResolver {
+
+	/**
+	 * @param iss the issuing country code.
+	 * @param kid the KID from the COSE protected header.
+	 * @return the public key, or a future failed with a
+	 *         {@link co.entomo.gdhcn.exceptions.GdhcnValidationException} if the key cannot be found.
+	 */
+	CompletableFuture<OneKey> resolve(String iss, String kid);
+}
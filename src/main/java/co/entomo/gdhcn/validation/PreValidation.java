@@ -0,0 +1,93 @@
+package co.entomo.gdhcn.validation;
+
+import co.entomo.gdhcn.hcert.Base45Codec;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Cheap structural checks that reject malformed or hostile input before it
+ * reaches the Base45 decoder, the inflater or the COSE parser. Every check
+ * only looks at the bytes it is given, allocates nothing and reports its
+ * outcome as a {@link PreValidationResult} instead of throwing.
+ */
+public final class PreValidation {
+
+	public static final String HC1_PREFIX = "HC1:";
+	/** An ES256 signature alone is 64 incompressible bytes, so 96 Base45 characters. */
+	public static final int MIN_PAYLOAD_LENGTH = 96;
+
+	private static final int TAG_COSE_SIGN1 = 0xd2;
+	private static final int ARRAY_OF_FOUR = 0x84;
+	private static final int MAJOR_TYPE_MASK = 0xe0;
+	private static final int MAJOR_TYPE_MAP = 0xa0;
+
+	private PreValidation() {
+	}
+
+	/**
+	 * Checks the prefix, length bounds and alphabet of a QR code content.
+	 *
+	 * @param content   the QR code content.
+	 * @param maxLength the longest content accepted, prefix included.
+	 * @return the outcome of the checks.
+	 */
+	public static PreValidationResult checkContent(String content, int maxLength) {
+		if (!content.startsWith(HC1_PREFIX))
+			return PreValidationResult.MISSING_PREFIX;
+		int payloadLength = content.length() - HC1_PREFIX.length();
+		if (payloadLength < MIN_PAYLOAD_LENGTH)
+			return PreValidationResult.TOO_SHORT;
+		if (content.length() > maxLength)
+			return PreValidationResult.TOO_LONG;
+		if (payloadLength % 3 == 1)
+			return PreValidationResult.INVALID_LENGTH;
+		if (!Base45Codec.isBase45(content, HC1_PREFIX.length(), content.length()))
+			return PreValidationResult.INVALID_CHARACTER;
+		return PreValidationResult.VALID;
+	}
+
+	/**
+	 * Checks that a payload starts with a zlib header using the deflate method and no preset dictionary.
+	 *
+	 * @param bytes  the Base45 decoded payload.
+	 * @param offset the start of the payload.
+	 * @param length the length of the payload.
+	 * @return the outcome of the check.
+	 */
+	public static PreValidationResult checkZlibHeader(byte[] bytes, int offset, int length) {
+		if (length < 2)
+			return PreValidationResult.NOT_ZLIB;
+		int cmf = bytes[offset] & 0xff;
+		int flg = bytes[offset + 1] & 0xff;
+		boolean deflate = (cmf & 0x0f) == 8 && (cmf >> 4) <= 7;
+		boolean presetDictionary = (flg & 0x20) != 0;
+		if (!deflate || presetDictionary || (cmf << 8 | flg) % 31 != 0)
+			return PreValidationResult.NOT_ZLIB;
+		return PreValidationResult.VALID;
+	}
+
+	/**
+	 * Checks that a message starts as a COSE_Sign1 structure, tagged or not.
+	 *
+	 * @param bytes the inflated COSE message.
+	 * @return the outcome of the check.
+	 */
+	public static PreValidationResult checkCoseSign1Header(byte[] bytes) {
+		int start = bytes.length > 0 && (bytes[0] & 0xff) == TAG_COSE_SIGN1 ? 1 : 0;
+		if (bytes.length <= start || (bytes[start] & 0xff) != ARRAY_OF_FOUR)
+			return PreValidationResult.NOT_COSE_SIGN1;
+		return PreValidationResult.VALID;
+	}
+
+	/**
+	 * Checks that a COSE payload starts as a CBOR map.
+	 *
+	 * @param bytes the COSE payload.
+	 * @return the outcome of the check.
+	 */
+	public static PreValidationResult checkCborMap(byte[] bytes) {
+		if (bytes == null || bytes.length == 0 || (bytes[0] & MAJOR_TYPE_MASK) != MAJOR_TYPE_MAP)
+			return PreValidationResult.NOT_CBOR_MAP;
+		return PreValidationResult.VALID;
+	}
+}
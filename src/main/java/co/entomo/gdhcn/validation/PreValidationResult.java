@@ -0,0 +1,33 @@
+package co.entomo.gdhcn.validation;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Outcome of the cheap structural checks made by {@link PreValidation} before
+ * the expensive decoding steps.
+ */
+public enum PreValidationResult {
+	VALID("Valid"),
+	MISSING_PREFIX("Content does not start with HC1:"),
+	TOO_SHORT("Content is too short to hold a signed payload"),
+	TOO_LONG("Content is longer than any QR code can hold"),
+	INVALID_LENGTH("Content length is not a valid Base45 length"),
+	INVALID_CHARACTER("Content holds characters outside the Base45 alphabet"),
+	NOT_ZLIB("Payload does not start with a zlib header"),
+	NOT_COSE_SIGN1("Payload is not a COSE_Sign1 message"),
+	NOT_CBOR_MAP("CWT claims are not a CBOR map");
+
+	private final String reason;
+
+	private PreValidationResult(String reason) {
+		this.reason = reason;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	public boolean isValid() {
+		return this == VALID;
+	}
+}
@@ -0,0 +1,21 @@
+package co.entomo.gdhcn.validation;
+
+import COSE.OneKey;
+import co.entomo.gdhcn.exceptions.GdhcnValidationException;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Looks up the DSC public key of an issuer and KID during validation.
+ */
+@FunctionalInterface
+public interface SigningKeyResolver {
+
+	/**
+	 * @param iss the issuing country code.
+	 * @param kid the KID from the COSE protected header.
+	 * @return the public key.
+	 * @throws GdhcnValidationException if the key cannot be found.
+	 */
+	OneKey resolve(String iss, String kid) throws GdhcnValidationException;
+}
@@ -0,0 +1,156 @@
+package co.entomo.gdhcn.validation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.upokecenter.cbor.CBORObject;
+
+import COSE.OneKey;
+import COSE.Sign1Message;
+import co.entomo.gdhcn.vo.CertificatePayload;
+import co.entomo.gdhcn.vo.SHLinkContent;
+import co.entomo.gdhcn.vo.StepStatus;
+import co.entomo.gdhcn.vo.ValidationDescription;
+import co.entomo.gdhcn.vo.ValidationStatus;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Mutable state of one validation, passed from stage to stage. A context is
+ * reset and reused for the next validation on the same thread; its decode
+ * buffer is kept across validations so decoding does not allocate. An
+ * asynchronous validation uses a context of its own, since its stages may
+ * complete on other threads.
+ */
+@Getter
+@Setter
+public class ValidationContext {
+
+	private static final ValidationDescription[] STEPS = ValidationDescription.values();
+
+	private String qrCodeContent;
+	private PreValidationResult preValidationResult;
+	private SigningKeyResolver signingKeyResolver;
+	private AsyncSigningKeyResolver asyncSigningKeyResolver;
+	private byte[] buffer = new byte[0];
+	private int bufferLength;
+	private byte[] coseBytes;
+	private Sign1Message message;
+	private CBORObject claims;
+	private CertificatePayload payload;
+	private String kid;
+	private OneKey signingKey;
+	private String shLink;
+	private SHLinkContent shLinkContent;
+	private volatile String failureReason;
+	private boolean completed;
+
+	@Getter(AccessLevel.NONE)
+	private final ValidationStatus[] statuses = new ValidationStatus[STEPS.length];
+	@Getter(AccessLevel.NONE)
+	private final long[] durations = new long[STEPS.length];
+
+	public ValidationContext() {
+		Arrays.fill(statuses, ValidationStatus.PENDING);
+	}
+
+	/**
+	 * Prepares the context for a new validation.
+	 *
+	 * @param qrCodeContent      the QR code content to validate.
+	 * @param signingKeyResolver the lookup of DSC public keys.
+	 */
+	public void reset(String qrCodeContent, SigningKeyResolver signingKeyResolver) {
+		clear();
+		this.qrCodeContent = qrCodeContent;
+		this.signingKeyResolver = signingKeyResolver;
+	}
+
+	/**
+	 * Drops every reference held for the last validation, keeping only the decode buffer.
+	 */
+	public void clear() {
+		qrCodeContent = null;
+		preValidationResult = null;
+		signingKeyResolver = null;
+		asyncSigningKeyResolver = null;
+		bufferLength = 0;
+		coseBytes = null;
+		message = null;
+		claims = null;
+		payload = null;
+		kid = null;
+		signingKey = null;
+		shLink = null;
+		shLinkContent = null;
+		failureReason = null;
+		completed = false;
+		Arrays.fill(statuses, ValidationStatus.PENDING);
+		Arrays.fill(durations, 0L);
+	}
+
+	/**
+	 * @param length the number of bytes needed.
+	 * @return the decode buffer, grown to at least {@code length} bytes.
+	 */
+	public byte[] buffer(int length) {
+		if (buffer.length < length)
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+		return buffer;
+	}
+
+	/**
+	 * Records why the current stage failed.
+	 *
+	 * @param reason a short description, logged but not returned to the caller.
+	 * @return {@link ValidationStatus#FAILED}.
+	 */
+	public ValidationStatus fail(String reason) {
+		this.failureReason = reason;
+		return ValidationStatus.FAILED;
+	}
+
+	void record(ValidationDescription step, ValidationStatus status, long nanos) {
+		statuses[step.ordinal()] = status;
+		durations[step.ordinal()] = nanos;
+	}
+
+	/**
+	 * @param step a validation step.
+	 * @return the outcome of the step, {@link ValidationStatus#PENDING} if it has not run.
+	 */
+	public ValidationStatus getStatus(ValidationDescription step) {
+		return statuses[step.ordinal()];
+	}
+
+	/**
+	 * @param step a validation step.
+	 * @return the time the step took in nanoseconds, 0 if it has not run.
+	 */
+	public long getDuration(ValidationDescription step) {
+		return durations[step.ordinal()];
+	}
+
+
+	/**
+	 * Builds the step statuses returned to the caller, numbered from 1 in
+	 * {@link ValidationDescription} order whatever order the stages ran in.
+	 *
+	 * @return the step statuses.
+	 */
+	public Map<Integer, StepStatus> toStatusMap() {
+		Map<Integer, StepStatus> map = new HashMap<>();
+		for (ValidationDescription step : STEPS) {
+			int number = step.ordinal() + 1;
+			StepStatus stepStatus = new StepStatus(String.valueOf(number), statuses[step.ordinal()], step);
+			if (stepStatus.getStatus() == ValidationStatus.FAILED)
+				stepStatus.setError(step.getErrorMessage());
+			map.put(number, stepStatus);
+		}
+		return map;
+	}
+}
@@ -0,0 +1,229 @@
+package co.entomo.gdhcn.validation;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import co.entomo.gdhcn.util.ValidationResultCache;
+import co.entomo.gdhcn.vo.ValidateCwtResponse;
+import co.entomo.gdhcn.vo.ValidationDescription;
+import co.entomo.gdhcn.vo.ValidationStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * Runs the {@link ValidationStage} beans in order over a per-thread
+ * {@link ValidationContext}. Each stage's outcome and duration is recorded in
+ * the context and in the {@code gdhcn.validation.stage} timer; the first failed
+ * stage ends the run, leaving the remaining steps pending. Successful
+ * validations are served from and stored in the {@link ValidationResultCache};
+ * content is only hashed for the cache once it passes {@link PreValidation},
+ * so oversized or malformed input is rejected without being digested.
+ *
+ * {@link #validateAsync(String, AsyncSigningKeyResolver)} runs the same stages
+ * without blocking: asynchronous stages such as the key lookup are started as
+ * soon as their input is decoded, and the remaining stages run while they wait.
+ */
+@Slf4j
+@Component
+public class ValidationPipeline {
+
+	private static final ThreadLocal<ValidationContext> CONTEXT = ThreadLocal.withInitial(ValidationContext::new);
+
+	@Autowired
+	private List<ValidationStage> stages;
+	@Autowired
+	private ValidationResultCache validationResultCache;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Value("${gdhcn.validation.maxQrLength:4296}")
+	private int maxQrLength;
+
+	private final Map<ValidationDescription, Timer> successTimers = new EnumMap<>(ValidationDescription.class);
+	private final Map<ValidationDescription, Timer> failureTimers = new EnumMap<>(ValidationDescription.class);
+
+	@PostConstruct
+	void initialize() {
+		for (ValidationStage stage : stages) {
+			successTimers.put(stage.getStep(), timer(stage.getStep(), ValidationStatus.SUCCESS));
+			failureTimers.put(stage.getStep(), timer(stage.getStep(), ValidationStatus.FAILED));
+		}
+		log.info("Validation pipeline: " + stages);
+	}
+
+	private Timer timer(ValidationDescription step, ValidationStatus outcome) {
+		return Timer.builder("gdhcn.validation.stage")
+				.tag("step", step.name())
+				.tag("outcome", outcome.name())
+				.description("Time spent in a validation stage")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Validates a QR code content.
+	 *
+	 * @param qrCodeContent      the QR code content.
+	 * @param signingKeyResolver the lookup of DSC public keys.
+	 * @return the outcome of every step and, when valid, the Smart Health Link content.
+	 */
+	public ValidateCwtResponse validate(String qrCodeContent, SigningKeyResolver signingKeyResolver) {
+		ValidationContext context = CONTEXT.get();
+		context.reset(qrCodeContent, signingKeyResolver);
+		try {
+			String cacheKey = cacheKey(context);
+			ValidateCwtResponse cached = cacheKey != null ? validationResultCache.get(cacheKey) : null;
+			if (cached != null)
+				return cached;
+
+			run(context);
+			ValidateCwtResponse response = ValidateCwtResponse.builder()
+					.validationStatus(context.toStatusMap())
+					.shLinkContent(context.getShLinkContent())
+					.build();
+			if (cacheKey != null && context.isCompleted() && context.getShLinkContent() != null)
+				validationResultCache.put(cacheKey, context.getKid(), context.getShLinkContent().getExp(), response);
+			return response;
+		} finally {
+			context.clear();
+		}
+	}
+
+	/**
+	 * Validates a QR code content without blocking on the key lookup. The
+	 * returned statuses are the same as {@link #validate(String, SigningKeyResolver)}
+	 * would return: steps after the first failed one are reported pending even
+	 * if they ran in parallel with it.
+	 *
+	 * @param qrCodeContent           the QR code content.
+	 * @param asyncSigningKeyResolver the non-blocking lookup of DSC public keys.
+	 * @return the outcome of every step and, when valid, the Smart Health Link content.
+	 */
+	public CompletableFuture<ValidateCwtResponse> validateAsync(String qrCodeContent,
+			AsyncSigningKeyResolver asyncSigningKeyResolver) {
+		ValidationContext context = new ValidationContext();
+		context.reset(qrCodeContent, null);
+		String cacheKey = cacheKey(context);
+		ValidateCwtResponse cached = cacheKey != null ? validationResultCache.get(cacheKey) : null;
+		if (cached != null)
+			return CompletableFuture.completedFuture(cached);
+
+		context.setAsyncSigningKeyResolver(asyncSigningKeyResolver);
+		Map<ValidationDescription, CompletableFuture<Boolean>> forks = new EnumMap<>(ValidationDescription.class);
+		for (ValidationStage stage : stages) {
+			if (stage.isAsync() || !stage.getDependencies().isEmpty()) {
+				CompletableFuture<Boolean> ready = CompletableFuture.completedFuture(true);
+				for (ValidationDescription dependency : stage.getDependencies()) {
+					CompletableFuture<Boolean> fork = forks.get(dependency);
+					if (fork != null)
+						ready = ready.thenCombine(fork, Boolean::logicalAnd);
+				}
+				forks.put(stage.getStep(), ready.thenCompose(ok -> ok ? runAsync(stage, context)
+						: CompletableFuture.completedFuture(false)));
+			} else if (!runStage(stage, context)) {
+				break;
+			}
+		}
+		return CompletableFuture.allOf(forks.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+			settle(context);
+			ValidateCwtResponse response = ValidateCwtResponse.builder()
+					.validationStatus(context.toStatusMap())
+					.shLinkContent(context.isCompleted() ? context.getShLinkContent() : null)
+					.build();
+			if (cacheKey != null && context.isCompleted() && context.getShLinkContent() != null)
+				validationResultCache.put(cacheKey, context.getKid(), context.getShLinkContent().getExp(), response);
+			return response;
+		});
+	}
+
+	/**
+	 * @return a response with every step pending, for validations that never ran.
+	 */
+	public ValidateCwtResponse pending() {
+		return ValidateCwtResponse.builder().validationStatus(new ValidationContext().toStatusMap()).build();
+	}
+
+	/**
+	 * Runs the pre-validation checks, leaving their outcome in the context for
+	 * the Base45 decoding stage to report.
+	 *
+	 * @return the cache key of the content, or {@code null} if it fails pre-validation.
+	 */
+	private String cacheKey(ValidationContext context) {
+		PreValidationResult result = PreValidation.checkContent(context.getQrCodeContent(), maxQrLength);
+		context.setPreValidationResult(result);
+		return result.isValid() ? validationResultCache.key(context.getQrCodeContent()) : null;
+	}
+
+	private void run(ValidationContext context) {
+		for (ValidationStage stage : stages) {
+			if (!runStage(stage, context))
+				return;
+		}
+		context.setCompleted(true);
+	}
+
+	private boolean runStage(ValidationStage stage, ValidationContext context) {
+		long start = System.nanoTime();
+		ValidationStatus status;
+		try {
+			status = stage.apply(context);
+		} catch (Exception e) {
+			status = context.fail(e.toString());
+		}
+		return record(stage, context, status, System.nanoTime() - start);
+	}
+
+	private CompletableFuture<Boolean> runAsync(ValidationStage stage, ValidationContext context) {
+		long start = System.nanoTime();
+		return stage.applyAsync(context).handle((status, error) -> {
+			if (error != null) {
+				Throwable cause = error instanceof CompletionException && error.getCause() != null
+						? error.getCause() : error;
+				status = context.fail(cause.toString());
+			}
+			return record(stage, context, status, System.nanoTime() - start);
+		});
+	}
+
+	private boolean record(ValidationStage stage, ValidationContext context, ValidationStatus status, long elapsed) {
+		context.record(stage.getStep(), status, elapsed);
+		if (status != ValidationStatus.SUCCESS) {
+			failureTimers.get(stage.getStep()).record(elapsed, TimeUnit.NANOSECONDS);
+			log.debug("Validation failed at {}: {}", stage.getStep(), context.getFailureReason());
+			return false;
+		}
+		successTimers.get(stage.getStep()).record(elapsed, TimeUnit.NANOSECONDS);
+		return true;
+	}
+
+	/**
+	 * Reports the steps of an asynchronous validation as a sequential run would:
+	 * every step after the first failure, in stage order, goes back to pending.
+	 */
+	private void settle(ValidationContext context) {
+		List<ValidationDescription> later = new ArrayList<>();
+		ValidationDescription failed = null;
+		for (ValidationStage stage : stages) {
+			ValidationStatus status = context.getStatus(stage.getStep());
+			if (failed == null && status != ValidationStatus.SUCCESS)
+				failed = stage.getStep();
+			else if (failed != null && stage.getStep() != failed)
+				later.add(stage.getStep());
+		}
+		for (ValidationDescription step : later)
+			context.record(step, ValidationStatus.PENDING, 0L);
+		context.setCompleted(failed == null);
+	}
+}
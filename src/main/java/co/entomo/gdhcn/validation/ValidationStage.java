@@ -0,0 +1,121 @@
+package co.entomo.gdhcn.validation;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import co.entomo.gdhcn.vo.ValidationDescription;
+import co.entomo.gdhcn.vo.ValidationStatus;
+
+/**
+ *  @author Uday Matta
+ *  @organization entomo Labs
+ * One step of the validation pipeline. A stage reads what earlier stages left in
+ * the {@link ValidationContext}, stores its own output there and returns
+ * {@link ValidationStatus#SUCCESS} to continue or {@link ValidationStatus#FAILED}
+ * to stop the pipeline. Stages are Spring beans run in {@code @Order}, so checks
+ * can be added or reordered by declaring beans.
+ *
+ * In an asynchronous validation, a stage reporting {@link #isAsync()} is started
+ * and left running while the following stages proceed; a stage naming it in
+ * {@link #getDependencies()} runs once it has succeeded.
+ */
+public interface ValidationStage {
+
+	/**
+	 * @return the step this stage reports its outcome under.
+	 */
+	ValidationDescription getStep();
+
+	/**
+	 * Runs the stage. Expected failures should be reported by returning
+	 * {@link ValidationContext#fail(String)}; an exception is also recorded as a
+	 * failure of the step, but costs a stack trace.
+	 *
+	 * @param context the state of the current validation.
+	 * @return {@link ValidationStatus#SUCCESS} or {@link ValidationStatus#FAILED}.
+	 * @throws Exception if a library call fails.
+	 */
+	ValidationStatus apply(ValidationContext context) throws Exception;
+
+	/**
+	 * Runs the stage without blocking. The default runs {@link #apply(ValidationContext)}
+	 * on the calling thread.
+	 *
+	 * @param context the state of the current validation.
+	 * @return the outcome of the stage, or a future failed with the exception it threw.
+	 */
+	default CompletableFuture<ValidationStatus> applyAsync(ValidationContext context) {
+		try {
+			return CompletableFuture.completedFuture(apply(context));
+		} catch (Exception e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * @return {@code true} if the stage waits on I/O and should run alongside
+	 *         the following stages in an asynchronous validation.
+	 */
+	default boolean isAsync() {
+		return false;
+	}
+
+	/**
+	 * @return the asynchronous steps whose success this stage needs, empty if it
+	 *         only reads the output of earlier synchronous stages.
+	 */
+	default Set<ValidationDescription> getDependencies() {
+		return Set.of();
+	}
+
+	/**
+	 * Creates a stage from a lambda.
+	 *
+	 * @param step the step the stage reports under.
+	 * @param body the stage logic.
+	 * @return the stage.
+	 */
+	static ValidationStage of(ValidationDescription step, Body body) {
+		return of(step, Set.of(), body);
+	}
+
+	/**
+	 * Creates a stage from a lambda that runs after asynchronous steps.
+	 *
+	 * @param step         the step the stage reports under.
+	 * @param dependencies the asynchronous steps the stage waits for.
+	 * @param body         the stage logic.
+	 * @return the stage.
+	 */
+	static ValidationStage of(ValidationDescription step, Set<ValidationDescription> dependencies, Body body) {
+		return new ValidationStage() {
+			@Override
+			public ValidationDescription getStep() {
+				return step;
+			}
+
+			@Override
+			public Set<ValidationDescription> getDependencies() {
+				return dependencies;
+			}
+
+			@Override
+			public ValidationStatus apply(ValidationContext context) throws Exception {
+				return body.apply(context);
+			}
+
+			@Override
+			public String toString() {
+				return step.name();
+			}
+		};
+	}
+
+	/**
+	 * Logic of a stage created with {@link #of(ValidationDescription, Body)}.
+	 */
+	@FunctionalInterface
+	interface Body {
+		ValidationStatus apply(ValidationContext context) throws Exception;
+	}
+}
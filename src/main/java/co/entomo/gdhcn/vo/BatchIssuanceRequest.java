@@ -0,0 +1,23 @@
+package co.entomo.gdhcn.vo;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Uday Matta
+ * @organization entomo Labs
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchIssuanceRequest {
+	@Schema(description = "QR code requests to issue, results are returned in the same order")
+	@NotEmpty(message = "requests is mandatory")
+	private List<@Valid QrCodeRequest> requests;
+}
@@ -0,0 +1,23 @@
+package co.entomo.gdhcn.vo;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Uday Matta
+ * @organization entomo Labs
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class BatchValidateRequest {
+  @NotEmpty(message = "qrCodeContents is mandatory")
+  @Schema(name = "qrCodeContents", description = "HC1 encoded QR code contents, responses are returned in the same order", required = true)
+  private List<@NotBlank(message = "Qr CodeContent is mandatory") String> qrCodeContents;
+}
@@ -0,0 +1,24 @@
+package co.entomo.gdhcn.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Uday Matta
+ * @organization entomo Labs
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DocumentIssuanceResponse {
+    @Schema(description = "Issued QR code content", example = "HC1:6BFOXNMG2N9H1/4W%MXN5PR7QO5SYP60JO DJS4//O:R8LCDO%0TJH/U3HT70%45C3SWQK.4W$4MJVIFT/FJ0R5BS6YVBS7BGJP49B7IIYIJY%D49M8MB/$CMYJ14KW9K8")
+    private String qrCode;
+    @Schema(description = "Size of the stored FHIR document in bytes", example = "48213")
+    private long contentLength;
+    @Schema(description = "Base64 encoded SHA-256 digest of the stored FHIR document", example = "n4bQgYhMfWWaL+qgxVrQFaO/TxsrC4Is0V1sFbDwCgg=")
+    private String sha256;
+}
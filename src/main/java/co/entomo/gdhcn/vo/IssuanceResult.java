@@ -0,0 +1,38 @@
+package co.entomo.gdhcn.vo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Uday Matta
+ * @organization entomo Labs
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IssuanceResult {
+    @Schema(description = "Position of the request in the batch", example = "0")
+    private int index;
+    @Schema(description = "Outcome of the issuance", example = "SUCCESS")
+    private ValidationStatus status;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Schema(description = "Issued QR code content", example = "HC1:6BFOXNMG2N9H1/4W%MXN5PR7QO5SYP60JO DJS4//O:R8LCDO%0TJH/U3HT70%45C3SWQK.4W$4MJVIFT/FJ0R5BS6YVBS7BGJP49B7IIYIJY%D49M8MB/$CMYJ14KW9K8")
+    private String qrCode;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Schema(description = "Reason the issuance failed")
+    private String error;
+
+    public static IssuanceResult success(int index, String qrCode) {
+        return IssuanceResult.builder().index(index).status(ValidationStatus.SUCCESS).qrCode(qrCode).build();
+    }
+
+    public static IssuanceResult failed(int index, String error) {
+        return IssuanceResult.builder().index(index).status(ValidationStatus.FAILED).error(error).build();
+    }
+}
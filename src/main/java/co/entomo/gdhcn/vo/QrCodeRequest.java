@@ -26,4 +26,8 @@ public class QrCodeRequest {
 	@Schema(description = "FHIR resource JSON object")
 	@NotBlank(message = "jsonContent is mandatory")
 	private String jsonContent;
+	@Schema(description = "Issuing country to sign for, the service country when omitted", example = "XL")
+	private String issuer;
+	@Schema(description = "KID of the DSC key to sign with, the issuer's active key when omitted", example = "UUuJcwmjoJM=")
+	private String kid;
 }
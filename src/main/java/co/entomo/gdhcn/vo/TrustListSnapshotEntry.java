@@ -0,0 +1,22 @@
+package co.entomo.gdhcn.vo;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+/**
+ * @author Uday Matta
+ * @organization entomo Labs
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TrustListSnapshotEntry {
+
+    private long fetchedAt;
+    private String etag;
+    private String lastModified;
+    private String contentHash;
+    private List<GdhcnCertificateVO> certificates;
+}
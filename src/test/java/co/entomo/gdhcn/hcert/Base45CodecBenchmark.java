@@ -0,0 +1,78 @@
+package co.entomo.gdhcn.hcert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import nl.minvws.encoding.Base45;
+
+/**
+ * Compares {@link Base45Codec} with the nl.minvws Base45 library on payloads of
+ * typical QR code sizes. Run with {@code mvn -Pbenchmark test-compile exec:exec}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base45CodecBenchmark {
+
+	@Param({ "256", "1024", "2048" })
+	private int size;
+
+	private byte[] data;
+	private String encoded;
+	private byte[] encodeBuffer;
+	private byte[] decodeBuffer;
+
+	@Setup
+	public void setup() {
+		data = new byte[size];
+		new Random(45).nextBytes(data);
+		encoded = Base45.getEncoder().encodeToString(data);
+		encodeBuffer = new byte[Base45Codec.encodedLength(size)];
+		decodeBuffer = new byte[size];
+	}
+
+	@Benchmark
+	public String libraryEncode() {
+		return Base45.getEncoder().encodeToString(data);
+	}
+
+	@Benchmark
+	public byte[] codecEncode() {
+		Base45Codec.encode(data, 0, data.length, encodeBuffer, 0);
+		return encodeBuffer;
+	}
+
+	@Benchmark
+	public byte[] libraryDecode() {
+		return Base45.getDecoder().decode(encoded.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Benchmark
+	public byte[] codecDecode() {
+		Base45Codec.decode(encoded, 0, encoded.length(), decodeBuffer, 0);
+		return decodeBuffer;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(Base45CodecBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,104 @@
+package co.entomo.gdhcn.hcert;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import nl.minvws.encoding.Base45;
+
+class Base45CodecTest {
+
+	private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+	@Test
+	void rfc9285Vectors() {
+		assertEquals("BB8", Base45Codec.encodeToString("AB".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals("%69 VD92EX0", Base45Codec.encodeToString("Hello!!".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals("UJCLQE7W581", Base45Codec.encodeToString("base-45".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals("ietf!", new String(Base45Codec.decode("QED8WEX0", 0, 8), StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void fuzzRoundTripMatchesLibrary() {
+		Random random = new Random(45);
+		byte[] encoded = new byte[Base45Codec.encodedLength(512)];
+		byte[] decoded = new byte[512];
+		for (int run = 0; run < 20_000; run++) {
+			byte[] data = new byte[random.nextInt(512)];
+			random.nextBytes(data);
+			String expected = Base45.getEncoder().encodeToString(data);
+
+			int length = Base45Codec.encode(data, 0, data.length, encoded, 0);
+			assertEquals(expected, new String(encoded, 0, length, StandardCharsets.US_ASCII));
+			assertEquals(data.length, Base45Codec.decode(expected, 0, expected.length(), decoded, 0));
+			assertArrayEquals(data, Arrays.copyOf(decoded, data.length));
+		}
+	}
+
+	@Test
+	void fuzzByteBuffers() {
+		Random random = new Random(4545);
+		for (int run = 0; run < 2_000; run++) {
+			byte[] data = new byte[random.nextInt(256)];
+			random.nextBytes(data);
+			ByteBuffer encoded = ByteBuffer.allocateDirect(Base45Codec.encodedLength(data.length));
+			Base45Codec.encode(ByteBuffer.wrap(data).asReadOnlyBuffer(), encoded);
+			encoded.flip();
+			ByteBuffer decoded = ByteBuffer.allocateDirect(data.length);
+			Base45Codec.decode(encoded, decoded);
+			decoded.flip();
+			byte[] result = new byte[decoded.remaining()];
+			decoded.get(result);
+			assertArrayEquals(data, result);
+		}
+	}
+
+	@Test
+	void fuzzArbitraryInputIsRejectedOrCanonical() {
+		Random random = new Random(9285);
+		for (int run = 0; run < 50_000; run++) {
+			char[] chars = new char[random.nextInt(32)];
+			for (int i = 0; i < chars.length; i++)
+				chars[i] = random.nextInt(8) == 0 ? (char) random.nextInt(256) : ALPHABET.charAt(random.nextInt(45));
+			String input = new String(chars);
+			byte[] decoded;
+			try {
+				decoded = Base45Codec.decode(input, 0, input.length());
+			} catch (IllegalArgumentException e) {
+				assertFalse(Base45Codec.isBase45(input, 0, input.length()) && isInRange(input), input);
+				continue;
+			}
+			assertTrue(Base45Codec.isBase45(input, 0, input.length()));
+			assertEquals(input, Base45Codec.encodeToString(decoded));
+		}
+	}
+
+	@Test
+	void rejectsInvalidInput() {
+		assertThrows(IllegalArgumentException.class, () -> Base45Codec.decode("A", 0, 1));
+		assertThrows(IllegalArgumentException.class, () -> Base45Codec.decode("ab", 0, 2));
+		assertThrows(IllegalArgumentException.class, () -> Base45Codec.decode(":::", 0, 3));
+		assertThrows(IllegalArgumentException.class, () -> Base45Codec.decode("::", 0, 2));
+		assertThrows(IllegalArgumentException.class, () -> Base45Codec.decode("B\u0142", 0, 2));
+	}
+
+	private static boolean isInRange(String input) {
+		for (int i = 0; i < input.length(); i += 3) {
+			int n = ALPHABET.indexOf(input.charAt(i)) + ALPHABET.indexOf(input.charAt(i + 1)) * 45;
+			if (i + 2 < input.length())
+				n += ALPHABET.indexOf(input.charAt(i + 2)) * 2025;
+			if (n > (i + 2 < input.length() ? 0xffff : 0xff))
+				return false;
+		}
+		return true;
+	}
+}
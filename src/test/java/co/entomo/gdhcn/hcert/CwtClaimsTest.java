@@ -0,0 +1,83 @@
+package co.entomo.gdhcn.hcert;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upokecenter.cbor.CBORObject;
+
+import COSE.CoseException;
+import COSE.Message;
+import COSE.MessageTag;
+import COSE.OneKey;
+import COSE.Sign1Message;
+import co.entomo.gdhcn.vo.CertificatePayload;
+import co.entomo.gdhcn.vo.HealthCertificate;
+import co.entomo.gdhcn.vo.SmartHealthLink;
+
+class CwtClaimsTest {
+
+	private OneKey publicKey;
+	private GreenCertificateEncoder encoder;
+
+	@BeforeEach
+	void generateKey() throws GeneralSecurityException, CoseException {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(256);
+		KeyPair keyPair = generator.generateKeyPair();
+		publicKey = new OneKey(keyPair.getPublic(), null);
+		encoder = new GreenCertificateEncoder(new OneKey(null, keyPair.getPrivate()), "kid-1");
+	}
+
+	@Test
+	void issuedCertificateRoundTrips() throws Exception {
+		CertificatePayload payload = payload();
+		CBORObject claims = claims(encoder.encode(payload));
+
+		assertEquals("XA", claims.get(CBORObject.FromObject(CwtClaims.ISS)).AsString());
+		assertEquals(1_700_000_000L, claims.get(CBORObject.FromObject(CwtClaims.IAT)).AsInt64Value());
+		assertEquals(1_800_000_000L, claims.get(CBORObject.FromObject(CwtClaims.EXP)).AsInt64Value());
+		assertTrue(claims.ContainsKey(CBORObject.FromObject(CwtClaims.HCERT)));
+		assertEquals(payload, CwtClaims.decode(claims));
+	}
+
+	@Test
+	void certificateWithStringClaimLabelsDecodes() throws Exception {
+		CertificatePayload payload = payload();
+		String certificate = encoder.encode(new ObjectMapper().writeValueAsString(payload));
+
+		CBORObject claims = claims(certificate);
+		assertTrue(claims.ContainsKey("-260"));
+		assertEquals(payload, CwtClaims.decode(claims));
+	}
+
+	private static CertificatePayload payload() {
+		HealthCertificate healthCertificate = HealthCertificate.builder()
+				.healthLinks(List.of(new SmartHealthLink("shlink://eyJ1cmwiOiJodHRwczovL2dkaGNuLnRlc3QifQ==")))
+				.build();
+		return CertificatePayload.builder()
+				.iss("XA")
+				.iat(1_700_000_000L)
+				.exp(1_800_000_000L)
+				.healthCertificate(healthCertificate)
+				.build();
+	}
+
+	/**
+	 * Decodes a certificate down to its CWT claims, checking its signature on the way.
+	 */
+	private CBORObject claims(String certificate) throws Exception {
+		byte[] cose = GreenCertificateDecoder.getCoseBytes(Base45Codec.decode(certificate, 4, certificate.length()));
+		Sign1Message message = (Sign1Message) Message.DecodeFromBytes(cose, MessageTag.Sign1);
+		assertTrue(GreenCertificateDecoder.validate(message, publicKey));
+		return CBORObject.DecodeFromBytes(message.GetContent());
+	}
+}
@@ -0,0 +1,123 @@
+package co.entomo.gdhcn.hcert;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import COSE.CoseException;
+import COSE.Message;
+import COSE.MessageTag;
+import COSE.OneKey;
+import COSE.Sign1Message;
+
+import com.upokecenter.cbor.CBORObject;
+
+class GreenCertificateDecoderTest {
+
+	private static final String JSON = "{\"resourceType\":\"Bundle\",\"id\":\"ips-1\",\"type\":\"document\"}";
+
+	private OneKey publicKey;
+	private String certificate;
+
+	@BeforeEach
+	void encode() throws GeneralSecurityException, CoseException, CompressorException, IOException {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(256);
+		KeyPair keyPair = generator.generateKeyPair();
+		publicKey = new OneKey(keyPair.getPublic(), null);
+		certificate = new GreenCertificateEncoder(new OneKey(null, keyPair.getPrivate()), "kid-1").encode(JSON);
+	}
+
+	@Test
+	void validCertificateRoundTrips() throws Exception {
+		byte[] deflated = Base45Codec.decode(certificate, 4, certificate.length());
+		byte[] cose = GreenCertificateDecoder.getCoseBytes(deflated);
+
+		assertArrayEquals(inflate(deflated), cose);
+		Sign1Message message = (Sign1Message) Message.DecodeFromBytes(cose, MessageTag.Sign1);
+		assertTrue(GreenCertificateDecoder.validate(message, publicKey));
+		assertEquals(CBORObject.FromJSONString(JSON),
+				CBORObject.FromJSONString(new GreenCertificateDecoder(publicKey).decode(certificate)));
+	}
+
+	@Test
+	void payloadInflatingPastTheLimitIsRejectedWithoutAllocatingIt() throws Exception {
+		int maxBytes = GreenCertificateDecoder.DEFAULT_MAX_COSE_BYTES;
+		byte[] bomb = deflate(new byte[16 * 1024 * 1024]);
+		assumeTrue(bomb.length < 64 * 1024);
+		com.sun.management.ThreadMXBean threads = allocationCounter();
+		long threadId = Thread.currentThread().getId();
+		// The first call on a thread allocates its buffer of maxBytes
+		GreenCertificateDecoder.getCoseBytes(deflate(new byte[16]), maxBytes);
+
+		long before = threads.getThreadAllocatedBytes(threadId);
+		assertThrows(CompressorException.class, () -> GreenCertificateDecoder.getCoseBytes(bomb, maxBytes));
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+		assertTrue(allocated < maxBytes, "allocated " + allocated + " bytes");
+	}
+
+	@Test
+	void truncatedStreamFailsCleanly() throws Exception {
+		byte[] deflated = Base45Codec.decode(certificate, 4, certificate.length());
+		byte[] truncated = Arrays.copyOf(deflated, deflated.length / 2);
+
+		assertThrows(CompressorException.class, () -> GreenCertificateDecoder.getCoseBytes(truncated));
+		assertThrows(CompressorException.class,
+				() -> GreenCertificateDecoder.getCoseBytes(new byte[] { 0x78, (byte) 0x9c, 0x00, 0x00 }));
+	}
+
+	@Test
+	void threadDecodesAgainAfterFailures() throws Exception {
+		byte[] deflated = Base45Codec.decode(certificate, 4, certificate.length());
+		byte[] truncated = Arrays.copyOf(deflated, deflated.length - 6);
+		byte[] bomb = deflate(new byte[1024 * 1024]);
+
+		assertThrows(CompressorException.class, () -> GreenCertificateDecoder.getCoseBytes(truncated));
+		assertArrayEquals(inflate(deflated), GreenCertificateDecoder.getCoseBytes(deflated));
+		assertThrows(CompressorException.class, () -> GreenCertificateDecoder.getCoseBytes(bomb));
+		assertEquals(CBORObject.FromJSONString(JSON),
+				CBORObject.FromJSONString(new GreenCertificateDecoder(publicKey).decode(certificate)));
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		return threads;
+	}
+
+	private static byte[] deflate(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION))) {
+			deflater.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] inflate(byte[] deflated) throws IOException {
+		try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+			return in.readAllBytes();
+		}
+	}
+}
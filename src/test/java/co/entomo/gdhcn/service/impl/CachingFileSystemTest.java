@@ -0,0 +1,247 @@
+package co.entomo.gdhcn.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+
+import co.entomo.gdhcn.service.GdhcnFileSystem;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CachingFileSystemTest {
+
+	private static final long HOUR = 3_600_000;
+
+	private final Map<String, byte[]> files = new HashMap<>();
+	private final Map<String, Integer> reads = new HashMap<>();
+	private final Map<String, Date> expiries = new HashMap<>();
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private boolean knownLength = true;
+
+	@Test
+	void evictsFewestHitsPerByteFirst() throws IOException {
+		CachingFileSystem cache = cache(300, 300, 3600);
+		store("hot", 100);
+		store("cold", 100);
+		store("other", 100);
+		read(cache, "hot");
+		read(cache, "hot");
+		read(cache, "cold");
+		read(cache, "other");
+		store("new", 100);
+		read(cache, "new");
+
+		read(cache, "hot");
+		read(cache, "other");
+		read(cache, "new");
+		assertEquals(1, reads.get("hot"));
+		assertEquals(1, reads.get("other"));
+		assertEquals(1, reads.get("new"));
+		read(cache, "cold");
+		assertEquals(2, reads.get("cold"));
+		assertEquals(2.0, evictions());
+	}
+
+	@Test
+	void evictsLargeFileBeforeSmallOnes() throws IOException {
+		CachingFileSystem cache = cache(300, 300, 3600);
+		store("large", 200);
+		store("small", 50);
+		read(cache, "large");
+		read(cache, "small");
+		store("next", 100);
+		read(cache, "next");
+
+		read(cache, "small");
+		read(cache, "large");
+		assertEquals(1, reads.get("small"));
+		assertEquals(2, reads.get("large"));
+	}
+
+	@Test
+	void entryLivesUntilQrCodeExpiresWithinTtl() throws Exception {
+		CachingFileSystem cache = cache(1000, 1000, 3600);
+		store("short", 10, new Date(System.currentTimeMillis() + 200));
+		read(cache, "short");
+		read(cache, "short");
+		assertEquals(1, reads.get("short"));
+
+		Thread.sleep(250);
+		read(cache, "short");
+		read(cache, "short");
+		assertEquals(3, reads.get("short"));
+	}
+
+	@Test
+	void ttlCapsEntryWhenQrCodeExpiresLater() throws Exception {
+		CachingFileSystem cache = cache(1000, 1000, 0);
+		store("long", 10);
+		read(cache, "long");
+		read(cache, "long");
+		assertEquals(2, reads.get("long"));
+	}
+
+	@Test
+	void unknownAndExpiredQrCodesAreNotCached() throws IOException {
+		CachingFileSystem cache = cache(1000, 1000, 3600);
+		store("expired", 10, new Date(System.currentTimeMillis() - 1000));
+		files.put("unknown.json", content("unknown", 10));
+		for (int i = 0; i < 2; i++) {
+			assertEquals(new String(content("expired", 10), StandardCharsets.UTF_8), read(cache, "expired"));
+			assertEquals(new String(content("unknown", 10), StandardCharsets.UTF_8), read(cache, "unknown"));
+		}
+		assertEquals(2, reads.get("expired"));
+		assertEquals(2, reads.get("unknown"));
+		assertThrows(FileNotFoundException.class, () -> cache.downloadResource("missing.json"));
+	}
+
+	@Test
+	void oversizeFilesPassThrough() throws IOException {
+		CachingFileSystem cache = cache(1000, 100, 3600);
+		store("known", 500);
+		assertEquals(new String(content("known", 500), StandardCharsets.UTF_8), read(cache, "known"));
+		read(cache, "known");
+		assertEquals(2, reads.get("known"));
+
+		knownLength = false;
+		store("streamed", 500);
+		assertEquals(new String(content("streamed", 500), StandardCharsets.UTF_8), read(cache, "streamed"));
+		read(cache, "streamed");
+		assertEquals(2, reads.get("streamed"));
+	}
+
+	@Test
+	void expiredEntriesArePurgedBeforeLiveOnesAreEvicted() throws Exception {
+		CachingFileSystem cache = cache(300, 300, 3600);
+		store("expiring", 100, new Date(System.currentTimeMillis() + 100));
+		store("a", 100);
+		store("b", 100);
+		read(cache, "expiring");
+		read(cache, "a");
+		read(cache, "b");
+
+		Thread.sleep(150);
+		store("c", 100);
+		read(cache, "c");
+		read(cache, "a");
+		read(cache, "b");
+		assertEquals(1, reads.get("a"));
+		assertEquals(1, reads.get("b"));
+		assertEquals(0.0, evictions());
+	}
+
+	@Test
+	void downloadWithoutExpiryIsServedFromCacheButNotCached() throws IOException {
+		CachingFileSystem cache = cache(1000, 1000, 3600);
+		store("file", 10);
+		assertEquals(new String(content("file", 10), StandardCharsets.UTF_8),
+				new String(cache.downloadJson("file.json").readAllBytes(), StandardCharsets.UTF_8));
+		read(cache, "file");
+		assertEquals(2, reads.get("file"));
+		cache.downloadJson("file.json").close();
+		assertEquals(2, reads.get("file"));
+	}
+
+	@Test
+	void uploadDropsCachedCopy() throws IOException {
+		CachingFileSystem cache = cache(1000, 1000, 3600);
+		store("file", 10);
+		read(cache, "file");
+		cache.uploadJson("file.json", "replaced");
+		assertEquals("replaced", read(cache, "file"));
+		assertEquals(2, reads.get("file"));
+	}
+
+	private CachingFileSystem cache(long maxBytes, int maxEntryBytes, long ttl) {
+		return new CachingFileSystem(new InMemoryFileSystem(), meterRegistry, maxBytes, maxEntryBytes, ttl, false);
+	}
+
+	private void store(String id, int length) {
+		store(id, length, new Date(System.currentTimeMillis() + HOUR));
+	}
+
+	private void store(String id, int length, Date expiresOn) {
+		files.put(id + ".json", content(id, length));
+		expiries.put(id, expiresOn);
+	}
+
+	private static byte[] content(String id, int length) {
+		byte[] content = new byte[length];
+		byte[] prefix = id.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < length; i++)
+			content[i] = i < prefix.length ? prefix[i] : (byte) 'x';
+		return content;
+	}
+
+	/**
+	 * Reads a file as the service does, passing the expiry of its QR code when it has one.
+	 */
+	private String read(CachingFileSystem cache, String id) throws IOException {
+		Resource resource = expiries.containsKey(id) ? cache.downloadResource(id + ".json", expiries.get(id))
+				: cache.downloadResource(id + ".json");
+		try (InputStream is = resource.getInputStream()) {
+			return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private double evictions() {
+		return meterRegistry.get("gdhcn.file.cache.evictions").functionCounter().count();
+	}
+
+	private class InMemoryFileSystem implements GdhcnFileSystem {
+
+		@Override
+		public void uploadJson(String fileName, String fileContent) {
+			files.put(fileName, fileContent.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void uploadJson(String fileName, File file) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void uploadJson(String fileName, InputStream content, long contentLength) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public InputStream downloadJson(String jsonId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Resource downloadResource(String jsonId) throws FileNotFoundException {
+			byte[] content = files.get(jsonId);
+			if (content == null)
+				throw new FileNotFoundException(jsonId);
+			reads.merge(jsonId.substring(0, jsonId.length() - ".json".length()), 1, Integer::sum);
+			return knownLength ? new ByteArrayResource(content)
+					: new InputStreamResource(new ByteArrayInputStream(content));
+		}
+
+		@Override
+		public void deleteJson(String fileName) {
+			files.remove(fileName);
+		}
+
+		@Override
+		public String getPath(String fileName) {
+			return fileName;
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package co.entomo.gdhcn.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import COSE.CoseException;
+import COSE.OneKey;
+import co.entomo.gdhcn.entity.QrCode;
+import co.entomo.gdhcn.exceptions.GdhcnValidationException;
+import co.entomo.gdhcn.hcert.GreenCertificateEncoder;
+import co.entomo.gdhcn.hcert.SigningContext;
+import co.entomo.gdhcn.repository.IpsFileRepository;
+import co.entomo.gdhcn.repository.QrCodeRepository;
+import co.entomo.gdhcn.service.GdhcnFileSystem;
+import co.entomo.gdhcn.util.DscSigningKeyManager;
+import co.entomo.gdhcn.util.HttpClientUtils;
+import co.entomo.gdhcn.validation.SigningKeyResolver;
+import co.entomo.gdhcn.validation.ValidationPipeline;
+import co.entomo.gdhcn.vo.IssuanceResult;
+import co.entomo.gdhcn.vo.QrCodeRequest;
+import co.entomo.gdhcn.vo.StepStatus;
+import co.entomo.gdhcn.vo.ValidateCwtResponse;
+import co.entomo.gdhcn.vo.ValidationDescription;
+import co.entomo.gdhcn.vo.ValidationStatus;
+
+class GdhcnServiceImplTest {
+
+	private static final int KEY_STEP = ValidationDescription.FETCH_PUBLIC_KEY_GDHCN.ordinal() + 1;
+
+	/** Content whose upload fails. */
+	private static final String UNWRITABLE = "{\"unwritable\":true}";
+
+	private final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+	private final Map<String, QrCode> rows = new ConcurrentHashMap<>();
+	private final Map<String, String> files = new ConcurrentHashMap<>();
+	private final AtomicInteger batchSaves = new AtomicInteger();
+	private volatile boolean failSaves;
+	private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withInitializer(context -> {
+				ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+				beanFactory.registerSingleton("httpClientUtils", new StubHttpClientUtils());
+				beanFactory.registerSingleton("validationPipeline", new StubValidationPipeline());
+				beanFactory.registerSingleton("dscSigningKeyManager", new StubDscSigningKeyManager());
+				beanFactory.registerSingleton("qrCodeRepository", stub(QrCodeRepository.class, this::qrCodeRepository));
+				beanFactory.registerSingleton("ipsFileRepository", unsupported(IpsFileRepository.class));
+				beanFactory.registerSingleton("gdhcnFileSystem", new InMemoryFileSystem());
+			})
+			.withBean(ModelMapper.class)
+			.withBean(GdhcnServiceImpl.class)
+			.withPropertyValues("gdhcn.baseUrl=https://gdhcn.test", "ips.shlink.expiry=60",
+					"recipient.keyDurationMinutes=60", "gdhcn.batch.maxSize=20", "gdhcn.batch.timeout=10000",
+					"gdhcn.batch.threads=4");
+
+	@Test
+	void eachIssuerAndKidIsLookedUpOncePerBatch() {
+		contextRunner.run(context -> {
+			GdhcnServiceImpl service = context.getBean(GdhcnServiceImpl.class);
+			List<String> contents = new ArrayList<>();
+			contents.addAll(Collections.nCopies(5, "XA/kid-1"));
+			contents.addAll(Collections.nCopies(3, "XA/kid-2"));
+			contents.addAll(Collections.nCopies(2, "XB/kid-1"));
+			contents.addAll(Collections.nCopies(4, "XA/unknown"));
+			List<ValidateCwtResponse> responses = service.vshcValidationBatch(contents);
+
+			assertEquals(contents.size(), responses.size());
+			for (int i = 0; i < contents.size(); i++)
+				assertEquals(contents.get(i).endsWith("unknown") ? ValidationStatus.FAILED : ValidationStatus.SUCCESS,
+						keyStatus(responses.get(i)));
+			assertEquals(Map.of("XA/kid-1", 1, "XA/kid-2", 1, "XB/kid-1", 1, "XA/unknown", 1), counts());
+		});
+	}
+
+	@Test
+	void itemsPastTheTimeBudgetArePending() {
+		contextRunner.withPropertyValues("gdhcn.batch.timeout=200").run(context -> {
+			GdhcnServiceImpl service = context.getBean(GdhcnServiceImpl.class);
+			long start = System.nanoTime();
+			List<ValidateCwtResponse> responses = service.vshcValidationBatch(
+					List.of("XA/kid-1", "XA/slow", "XB/kid-1", "XA/slow"));
+
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+			assertEquals(ValidationStatus.SUCCESS, keyStatus(responses.get(0)));
+			assertEquals(ValidationStatus.PENDING, keyStatus(responses.get(1)));
+			assertEquals(ValidationStatus.SUCCESS, keyStatus(responses.get(2)));
+			assertEquals(ValidationStatus.PENDING, keyStatus(responses.get(3)));
+			assertEquals(1, counts().get("XA/slow"));
+		});
+	}
+
+	@Test
+	void itemsReachedAfterTheDeadlineAreNotValidated() {
+		contextRunner.withPropertyValues("gdhcn.batch.timeout=200", "gdhcn.batch.threads=1").run(context -> {
+			GdhcnServiceImpl service = context.getBean(GdhcnServiceImpl.class);
+			List<ValidateCwtResponse> responses = service.vshcValidationBatch(List.of("XA/slow", "XB/kid-1"));
+
+			assertEquals(ValidationStatus.PENDING, keyStatus(responses.get(0)));
+			assertEquals(ValidationStatus.PENDING, keyStatus(responses.get(1)));
+			Thread.sleep(100);
+			assertEquals(Map.of("XA/slow", 1), counts());
+		});
+	}
+
+	@Test
+	void itemsBeyondTheQueueArePending() {
+		contextRunner.withPropertyValues("gdhcn.batch.threads=1", "gdhcn.batch.queueCapacity=1").run(context -> {
+			GdhcnServiceImpl service = context.getBean(GdhcnServiceImpl.class);
+			List<ValidateCwtResponse> responses = service.vshcValidationBatch(
+					List.of("XA/held", "XB/kid-1", "XC/kid-1"));
+
+			assertEquals(ValidationStatus.SUCCESS, keyStatus(responses.get(0)));
+			assertEquals(ValidationStatus.SUCCESS, keyStatus(responses.get(1)));
+			assertEquals(ValidationStatus.PENDING, keyStatus(responses.get(2)));
+			assertEquals(Map.of("XA/held", 1, "XB/kid-1", 1), counts());
+		});
+	}
+
+	@Test
+	void oversizedBatchIsRejected() {
+		contextRunner.run(context -> {
+			GdhcnServiceImpl service = context.getBean(GdhcnServiceImpl.class);
+			assertThrows(GdhcnValidationException.class,
+					() -> service.vshcValidationBatch(Collections.nCopies(21, "XA/kid-1")));
+			assertEquals(Map.of(), counts());
+		});
+	}
+
+	@Test
+	void batchIssuanceKeepsInputOrderAndLeavesNothingOfFailedItems() {
+		contextRunner.run(context -> {
+			GdhcnServiceImpl service = context.getBean(GdhcnServiceImpl.class);
+			List<IssuanceResult> results = service.vshcIssuanceBatch(List.of(request("XA", "{\"id\":0}"),
+					request("XA", UNWRITABLE), request("XX", "{\"id\":2}"), request(null, "{\"id\":3}")));
+
+			assertEquals(List.of(0, 1, 2, 3), results.stream().map(IssuanceResult::getIndex).toList());
+			assertEquals(List.of(ValidationStatus.SUCCESS, ValidationStatus.FAILED, ValidationStatus.FAILED,
+					ValidationStatus.SUCCESS), results.stream().map(IssuanceResult::getStatus).toList());
+			assertTrue(results.get(0).getQrCode().startsWith("HC1:"));
+			assertTrue(results.get(3).getQrCode().startsWith("HC1:"));
+			assertEquals(1, batchSaves.get());
+			assertEquals(2, rows.size());
+			for (String id : rows.keySet())
+				assertTrue(files.containsKey(id + ".json"));
+			assertEquals(List.of("{\"id\":0}", "{\"id\":3}"), files.values().stream().sorted().toList());
+		});
+	}
+
+	@Test
+	void failedBatchOfRowsLeavesNoFiles() {
+		failSaves = true;
+		contextRunner.run(context -> {
+			GdhcnServiceImpl service = context.getBean(GdhcnServiceImpl.class);
+			List<IssuanceResult> results = service.vshcIssuanceBatch(List.of(request("XA", "{\"id\":0}"),
+					request("XA", "{\"id\":1}")));
+
+			for (IssuanceResult result : results)
+				assertEquals(ValidationStatus.FAILED, result.getStatus());
+			assertEquals(Map.of(), rows);
+			assertEquals(Map.of(), files);
+		});
+	}
+
+	@Test
+	void storedDocumentWhoseRowCannotBeSavedIsDeleted() {
+		failSaves = true;
+		contextRunner.run(context -> {
+			GdhcnServiceImpl service = context.getBean(GdhcnServiceImpl.class);
+			byte[] document = "{\"id\":0}".getBytes(StandardCharsets.UTF_8);
+
+			assertThrows(DataIntegrityViolationException.class, () -> service.vshcIssuance(request("XA", null),
+					new ByteArrayInputStream(document), document.length));
+			assertEquals(Map.of(), rows);
+			assertEquals(Map.of(), files);
+		});
+	}
+
+	private static QrCodeRequest request(String issuer, String jsonContent) {
+		return QrCodeRequest.builder().issuer(issuer).jsonContent(jsonContent).build();
+	}
+
+	/**
+	 * Keeps the saved rows in memory; saving fails while {@link #failSaves} is set.
+	 */
+	@SuppressWarnings("unchecked")
+	private Object qrCodeRepository(Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+		case "save":
+			if (failSaves)
+				throw new DataIntegrityViolationException("duplicate key value violates unique constraint");
+			rows.put(((QrCode) args[0]).getId(), (QrCode) args[0]);
+			return args[0];
+		case "saveAll":
+			batchSaves.incrementAndGet();
+			if (failSaves)
+				throw new DataIntegrityViolationException("duplicate key value violates unique constraint");
+			((Iterable<QrCode>) args[0]).forEach(qrCode -> rows.put(qrCode.getId(), qrCode));
+			return args[0];
+		case "deleteAll":
+			((Iterable<QrCode>) args[0]).forEach(qrCode -> rows.remove(qrCode.getId()));
+			return null;
+		default:
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+
+	private Map<String, Integer> counts() {
+		Map<String, Integer> counts = new ConcurrentHashMap<>();
+		lookups.forEach((key, count) -> counts.put(key, count.get()));
+		return counts;
+	}
+
+	/**
+	 * @return an implementation of a collaborator the tested paths must not use.
+	 */
+	private static <T> T unsupported(Class<T> type) {
+		return stub(type, (proxy, method, args) -> {
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			if (method.getDeclaringClass() == Object.class)
+				return switch (method.getName()) {
+					case "equals" -> proxy == args[0];
+					case "hashCode" -> System.identityHashCode(proxy);
+					default -> type.getSimpleName();
+				};
+			return handler.invoke(proxy, method, args);
+		});
+	}
+
+	private static ValidationStatus keyStatus(ValidateCwtResponse response) {
+		return response.getValidationStatus().get(KEY_STEP).getStatus();
+	}
+
+	/**
+	 * Resolves every KID but {@code unknown}, answering {@code held} after 300ms and {@code slow} never.
+	 */
+	private class StubHttpClientUtils extends HttpClientUtils {
+
+		@Override
+		public CompletableFuture<OneKey> getSigningKeyAsync(String countryCode, String kid) {
+			lookups.computeIfAbsent(countryCode + "/" + kid, key -> new AtomicInteger()).incrementAndGet();
+			return switch (kid) {
+				case "unknown" -> CompletableFuture.failedFuture(
+						new GdhcnValidationException("Kid " + kid + " not found in GDHCN Network"));
+				case "held" -> new CompletableFuture<OneKey>().completeOnTimeout(null, 300, TimeUnit.MILLISECONDS);
+				case "slow" -> new CompletableFuture<>();
+				default -> CompletableFuture.completedFuture(null);
+			};
+		}
+	}
+
+	/**
+	 * Takes QR contents of the form {@code issuer/kid} and only runs the key lookup.
+	 */
+	private static class StubValidationPipeline extends ValidationPipeline {
+
+		@Override
+		public ValidateCwtResponse validate(String qrCodeContent, SigningKeyResolver signingKeyResolver) {
+			String[] parts = qrCodeContent.split("/");
+			ValidationStatus status;
+			try {
+				signingKeyResolver.resolve(parts[0], parts[1]);
+				status = ValidationStatus.SUCCESS;
+			} catch (GdhcnValidationException e) {
+				status = ValidationStatus.FAILED;
+			}
+			Map<Integer, StepStatus> validationStatus = new ConcurrentHashMap<>(pending().getValidationStatus());
+			validationStatus.put(KEY_STEP, new StepStatus(String.valueOf(KEY_STEP), status,
+					ValidationDescription.FETCH_PUBLIC_KEY_GDHCN));
+			return ValidateCwtResponse.builder().validationStatus(validationStatus).build();
+		}
+	}
+
+	/**
+	 * Signs for {@code XA}, the default issuer, with a generated key; has no key for any other issuer.
+	 */
+	private static class StubDscSigningKeyManager extends DscSigningKeyManager {
+
+		private final SigningContext signingContext;
+
+		StubDscSigningKeyManager() {
+			try {
+				KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+				generator.initialize(256);
+				OneKey privateKey = new OneKey(null, generator.generateKeyPair().getPrivate());
+				signingContext = new SigningContext("XA", "kid-1", new GreenCertificateEncoder(privateKey, "kid-1"));
+			} catch (GeneralSecurityException | CoseException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public SigningContext getSigningContext(String issuer, String kid) throws GdhcnValidationException {
+			if (issuer != null && !issuer.equals("XA"))
+				throw new GdhcnValidationException("No DSC signing key for " + issuer);
+			return signingContext;
+		}
+	}
+
+	/**
+	 * Keeps files in memory; writing {@link #UNWRITABLE} fails.
+	 */
+	private class InMemoryFileSystem implements GdhcnFileSystem {
+
+		@Override
+		public void uploadJson(String fileName, String fileContent) throws IOException {
+			if (fileContent.equals(UNWRITABLE))
+				throw new IOException("No space left on device");
+			files.put(fileName, fileContent);
+		}
+
+		@Override
+		public void uploadJson(String fileName, File file) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void uploadJson(String fileName, InputStream content, long contentLength) throws IOException {
+			uploadJson(fileName, new String(content.readAllBytes(), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public InputStream downloadJson(String jsonId) throws FileNotFoundException {
+			throw new FileNotFoundException(jsonId);
+		}
+
+		@Override
+		public void deleteJson(String fileName) {
+			files.remove(fileName);
+		}
+
+		@Override
+		public String getPath(String fileName) {
+			return "memory:" + fileName;
+		}
+	}
+}
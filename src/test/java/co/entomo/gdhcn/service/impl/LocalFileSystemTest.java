@@ -0,0 +1,164 @@
+package co.entomo.gdhcn.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+class LocalFileSystemTest {
+
+	@TempDir
+	Path baseLocation;
+
+	private final List<AnnotationConfigApplicationContext> opened = new ArrayList<>();
+
+	@AfterEach
+	void shutdown() {
+		opened.forEach(AnnotationConfigApplicationContext::close);
+	}
+
+	@Test
+	void flatFileIsMovedIntoItsShardWhenRead() throws Exception {
+		LocalFileSystem fileSystem = open(LocalFileSystem.class, "filesystem.migrateOnStartup=false");
+		Path legacy = Files.writeString(root().resolve("a.json"), "{\"a\":1}");
+		Path shard = Path.of(fileSystem.getPath("a.json"));
+		assertFalse(Files.exists(shard));
+
+		assertEquals("{\"a\":1}", read(fileSystem, "a.json"));
+		assertFalse(Files.exists(legacy));
+		assertEquals("{\"a\":1}", Files.readString(shard));
+		assertEquals("{\"a\":1}", read(fileSystem, "a.json"));
+	}
+
+	@Test
+	void flatFilesAreMovedIntoTheirShardsAtStartup() throws Exception {
+		Files.createDirectories(root());
+		Path a = Files.writeString(root().resolve("a.json"), "{\"a\":1}");
+		Path b = Files.writeString(root().resolve("b.json"), "{\"b\":2}");
+		LocalFileSystem fileSystem = open(LocalFileSystem.class, "filesystem.migrateOnStartup=true");
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((Files.exists(a) || Files.exists(b)) && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertFalse(Files.exists(a));
+		assertFalse(Files.exists(b));
+		assertEquals("{\"a\":1}", Files.readString(Path.of(fileSystem.getPath("a.json"))));
+		assertEquals("{\"b\":2}", Files.readString(Path.of(fileSystem.getPath("b.json"))));
+	}
+
+	@Test
+	void failedWriteLeavesNoFile() throws Exception {
+		LocalFileSystem fileSystem = open(LocalFileSystem.class);
+		InputStream failing = new InputStream() {
+			private int remaining = 100_000;
+
+			@Override
+			public int read() throws IOException {
+				if (remaining-- == 0)
+					throw new IOException("Connection reset");
+				return '0';
+			}
+		};
+
+		assertThrows(IOException.class, () -> fileSystem.uploadJson("a.json", failing, 200_000));
+		assertFalse(Files.exists(Path.of(fileSystem.getPath("a.json"))));
+		assertThrows(FileNotFoundException.class, () -> fileSystem.downloadJson("a.json"));
+		assertEquals(List.of(), files());
+	}
+
+	@Test
+	void staleTemporaryFilesAreDeletedAtStartup() throws Exception {
+		Path shard = Path.of(open(LocalFileSystem.class).getPath("a.json")).getParent();
+		Files.createDirectories(shard);
+		Path staleInRoot = temp(root(), "b.json", TimeUnit.HOURS.toMillis(2));
+		Path staleInShard = temp(shard, "a.json", TimeUnit.HOURS.toMillis(2));
+		Path young = temp(shard, "a.json", TimeUnit.MINUTES.toMillis(1));
+		open(LocalFileSystem.class, "filesystem.staleTempAge=1h");
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((Files.exists(staleInRoot) || Files.exists(staleInShard)) && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertFalse(Files.exists(staleInRoot));
+		assertFalse(Files.exists(staleInShard));
+		assertTrue(Files.exists(young));
+	}
+
+	@Test
+	void writesFallBackToAMoveWithoutHardLinks() throws Exception {
+		LocalFileSystem fileSystem = open(LinklessFileSystem.class);
+
+		fileSystem.uploadJson("a.json", "{\"a\":1}");
+		assertEquals("{\"a\":1}", read(fileSystem, "a.json"));
+		assertThrows(FileAlreadyExistsException.class, () -> fileSystem.uploadJson("a.json", "{\"a\":2}"));
+		assertEquals("{\"a\":1}", read(fileSystem, "a.json"));
+		assertEquals(List.of(Path.of(fileSystem.getPath("a.json"))), files());
+	}
+
+	private <T extends LocalFileSystem> T open(Class<T> type, String... properties) {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+		context.getEnvironment().setActiveProfiles("fileSystem");
+		TestPropertyValues.of("filesystem.baseLocation=" + baseLocation, "filesystem.folderName=json",
+				"filesystem.fsync=DATA", "filesystem.migrateOnStartup=false").and(properties).applyTo(context);
+		context.register(type);
+		context.refresh();
+		opened.add(context);
+		return context.getBean(type);
+	}
+
+	private Path root() {
+		return baseLocation.resolve("json");
+	}
+
+	/**
+	 * @return every regular file under the JSON folder, temporary ones included.
+	 */
+	private List<Path> files() throws IOException {
+		try (Stream<Path> files = Files.walk(root())) {
+			return files.filter(Files::isRegularFile).toList();
+		}
+	}
+
+	private static Path temp(Path directory, String fileName, long age) throws IOException {
+		Path temp = Files.createFile(directory.resolve("." + fileName + "." + System.nanoTime() + ".tmp"));
+		Files.setLastModifiedTime(temp, FileTime.fromMillis(System.currentTimeMillis() - age));
+		return temp;
+	}
+
+	private static String read(LocalFileSystem fileSystem, String fileName) throws IOException {
+		try (InputStream is = fileSystem.downloadJson(fileName)) {
+			return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * A local file system on a volume without hard links.
+	 */
+	static class LinklessFileSystem extends LocalFileSystem {
+
+		@Override
+		void createLink(Path link, Path existing) {
+			throw new UnsupportedOperationException("Hard links are not supported");
+		}
+	}
+}
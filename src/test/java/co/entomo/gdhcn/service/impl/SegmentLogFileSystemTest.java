@@ -0,0 +1,269 @@
+package co.entomo.gdhcn.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import co.entomo.gdhcn.repository.QrCodeRepository;
+
+class SegmentLogFileSystemTest {
+
+	private static final int SEGMENT_SIZE = 4096;
+	private static final byte PENDING = 0;
+
+	@TempDir
+	Path baseLocation;
+
+	private final Set<String> unexpiredIds = new HashSet<>();
+	private final Map<SegmentLogFileSystem, AnnotationConfigApplicationContext> opened = new IdentityHashMap<>();
+	private Duration compactionGrace = Duration.ZERO;
+
+	@AfterEach
+	void shutdown() {
+		opened.values().forEach(AnnotationConfigApplicationContext::close);
+	}
+
+	@Test
+	void recoverySkipsUncommittedAndCorruptRecords() throws Exception {
+		SegmentLogFileSystem fileSystem = open();
+		fileSystem.uploadJson("a.json", "{\"a\":1}");
+		fileSystem.uploadJson("b.json", "{\"b\":2}");
+		assertThrows(IOException.class,
+				() -> fileSystem.uploadJson("abandoned.json", new ByteArrayInputStream(new byte[5]), 10));
+		fileSystem.uploadJson("c.json", "{\"c\":3}");
+		close(fileSystem);
+
+		Path segment = segments().get(0);
+		byte[] bytes = Files.readAllBytes(segment);
+		int b = indexOf(bytes, "{\"b\":2}");
+		writeAt(segment, b, "{\"b\":9}".getBytes(StandardCharsets.UTF_8));
+		writeAt(segment, end(bytes), pendingRecord("pending.json", "{}"));
+
+		SegmentLogFileSystem reopened = open();
+		assertEquals("{\"a\":1}", read(reopened, "a.json"));
+		assertEquals("{\"c\":3}", read(reopened, "c.json"));
+		assertThrows(FileNotFoundException.class, () -> reopened.downloadJson("b.json"));
+		assertThrows(FileNotFoundException.class, () -> reopened.downloadJson("abandoned.json"));
+		assertThrows(FileNotFoundException.class, () -> reopened.downloadJson("pending.json"));
+	}
+
+	@Test
+	void createNewConflictsWithCommittedAndInFlightFiles() throws Exception {
+		SegmentLogFileSystem fileSystem = open();
+		fileSystem.uploadJson("a.json", "first");
+		assertThrows(FileAlreadyExistsException.class, () -> fileSystem.uploadJson("a.json", "second"));
+
+		Path replacement = Files.writeString(baseLocation.resolve("replacement.json"), "replaced");
+		fileSystem.uploadJson("a.json", replacement.toFile());
+		assertEquals("replaced", read(fileSystem, "a.json"));
+
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		InputStream slow = new InputStream() {
+			private int remaining = 4;
+
+			@Override
+			public int read() throws IOException {
+				reading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				return remaining-- > 0 ? 'x' : -1;
+			}
+		};
+		CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+			try {
+				fileSystem.uploadJson("b.json", slow, 4);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		assertTrue(reading.await(5, TimeUnit.SECONDS));
+		assertThrows(FileAlreadyExistsException.class, () -> fileSystem.uploadJson("b.json", "other"));
+		release.countDown();
+		first.get(5, TimeUnit.SECONDS);
+		assertEquals("xxxx", read(fileSystem, "b.json"));
+	}
+
+	@Test
+	void rollsToNewSegmentWhenRecordDoesNotFit() throws Exception {
+		SegmentLogFileSystem fileSystem = open();
+		for (int i = 0; i < 3; i++)
+			fileSystem.uploadJson(i + ".json", content(i, 1500));
+		assertEquals(2, segments().size());
+		for (int i = 0; i < 3; i++)
+			assertEquals(content(i, 1500), read(fileSystem, i + ".json"));
+		assertThrows(IOException.class, () -> fileSystem.uploadJson("large.json", content(0, SEGMENT_SIZE)));
+	}
+
+	@Test
+	void compactionRelocatesLiveFilesAndDropsExpiredOnes() throws Exception {
+		SegmentLogFileSystem fileSystem = open();
+		fileSystem.uploadJson("notes", "not a QR code file");
+		for (int i = 0; i < 20; i++) {
+			fileSystem.uploadJson(i + ".json", content(i, 300));
+			if (i % 3 == 0)
+				unexpiredIds.add(String.valueOf(i));
+		}
+		close(fileSystem);
+
+		SegmentLogFileSystem reopened = open();
+		List<Path> sealed = segments();
+		sealed.remove(sealed.size() - 1);
+		reopened.compact();
+		for (Path segment : sealed)
+			assertTrue(Files.notExists(segment), segment + " was not compacted");
+		assertLiveFiles(reopened);
+		close(reopened);
+
+		assertLiveFiles(open());
+	}
+
+	@Test
+	void compactionSparesFilesWithinGrace() throws Exception {
+		compactionGrace = Duration.ofHours(1);
+		SegmentLogFileSystem fileSystem = open();
+		for (int i = 0; i < 20; i++)
+			fileSystem.uploadJson(i + ".json", content(i, 400));
+		close(fileSystem);
+
+		SegmentLogFileSystem reopened = open();
+		List<Path> before = segments();
+		reopened.compact();
+		assertEquals(before, segments());
+		for (int i = 0; i < 20; i++)
+			assertEquals(content(i, 400), read(reopened, i + ".json"));
+	}
+
+	private void assertLiveFiles(SegmentLogFileSystem fileSystem) throws IOException {
+		for (int i = 0; i < 20; i++) {
+			String fileName = i + ".json";
+			if (i % 3 == 0)
+				assertEquals(content(i, 300), read(fileSystem, fileName));
+			else
+				assertThrows(FileNotFoundException.class, () -> fileSystem.downloadJson(fileName));
+		}
+		assertEquals("not a QR code file", read(fileSystem, "notes"));
+	}
+
+	/**
+	 * Starts the file system the way the {@code segmentLog} profile does, in a context of its own.
+	 */
+	@SuppressWarnings("unchecked")
+	private SegmentLogFileSystem open() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+		context.getEnvironment().setActiveProfiles("segmentLog");
+		TestPropertyValues.of("filesystem.baseLocation=" + baseLocation, "filesystem.segment.folderName=segments",
+				"filesystem.segment.size=" + SEGMENT_SIZE, "filesystem.fsync=DATA",
+				"filesystem.segment.commitInterval=0ms", "filesystem.segment.compactionInterval=1h",
+				"filesystem.segment.compactionThreshold=0.5",
+				"filesystem.segment.compactionGrace=" + compactionGrace.toMillis() + "ms").applyTo(context);
+		context.getBeanFactory().registerSingleton("qrCodeRepository", Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { QrCodeRepository.class }, (proxy, method, args) -> {
+					if (!method.getName().equals("findUnexpiredIds"))
+						throw new UnsupportedOperationException(method.getName());
+					Set<String> unexpired = new HashSet<>((Collection<String>) args[0]);
+					unexpired.retainAll(unexpiredIds);
+					return unexpired;
+				}));
+		context.register(SegmentLogFileSystem.class);
+		context.refresh();
+		SegmentLogFileSystem fileSystem = context.getBean(SegmentLogFileSystem.class);
+		opened.put(fileSystem, context);
+		return fileSystem;
+	}
+
+	private void close(SegmentLogFileSystem fileSystem) {
+		opened.remove(fileSystem).close();
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(baseLocation.resolve("segments"))) {
+			return new ArrayList<>(files.sorted().toList());
+		}
+	}
+
+	private static String read(SegmentLogFileSystem fileSystem, String fileName) throws IOException {
+		try (InputStream is = fileSystem.downloadJson(fileName)) {
+			return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static String content(int i, int length) {
+		String prefix = "{\"v\":" + i + ",\"pad\":\"";
+		return prefix + "x".repeat(length - prefix.length() - 2) + "\"}";
+	}
+
+	private static int indexOf(byte[] bytes, String value) {
+		byte[] target = value.getBytes(StandardCharsets.UTF_8);
+		outer:
+		for (int i = 0; i <= bytes.length - target.length; i++) {
+			for (int j = 0; j < target.length; j++)
+				if (bytes[i + j] != target[j])
+					continue outer;
+			return i;
+		}
+		throw new AssertionError(value + " not found");
+	}
+
+	/**
+	 * @return the offset past the last record of a segment.
+	 */
+	private static int end(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int offset = 0;
+		int length;
+		while ((length = buffer.getInt(offset)) != 0)
+			offset += length;
+		return offset;
+	}
+
+	private static byte[] pendingRecord(String fileName, String content) {
+		byte[] key = fileName.getBytes(StandardCharsets.UTF_8);
+		byte[] value = content.getBytes(StandardCharsets.UTF_8);
+		int length = 19 + key.length + value.length;
+		return ByteBuffer.allocate(length).putInt(length).put(PENDING).putShort((short) key.length)
+				.putLong(System.currentTimeMillis()).putInt(0).put(key).put(value).array();
+	}
+
+	private static void writeAt(Path path, int offset, byte[] bytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(bytes), offset);
+		}
+	}
+}
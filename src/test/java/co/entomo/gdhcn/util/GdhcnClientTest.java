@@ -0,0 +1,214 @@
+package co.entomo.gdhcn.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import co.entomo.gdhcn.exceptions.GdhcnTrustListUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class GdhcnClientTest {
+
+	private static final HttpRequest REQUEST = HttpRequest.newBuilder(URI.create("https://tng.test/trustList")).build();
+
+	private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withInitializer(context -> context.getBeanFactory().registerSingleton("tngHttpClientManager",
+					new StubTngHttpClientManager()))
+			.withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+			.withBean(GdhcnClient.class)
+			.withPropertyValues("gdhcn.client.requestTimeout=5000", "gdhcn.client.retryBackoff=1");
+	private final AtomicInteger exchanges = new AtomicInteger();
+	/** Answers the n-th exchange, counted from 1. */
+	private volatile IntFunction<CompletableFuture<HttpResponse<InputStream>>> responder;
+
+	@Test
+	void circuitOpensAfterConsecutiveFailuresAndFailsFast() {
+		runner(1, 0, 3, 30, 16).run(context -> {
+			GdhcnClient client = context.getBean(GdhcnClient.class);
+			responder = n -> n == 2 ? ok(503) : CompletableFuture.failedFuture(new IOException("reset"));
+			for (int i = 0; i < 3; i++) {
+				CompletableFuture<HttpResponse<InputStream>> response = client.send(REQUEST);
+				if (i == 1)
+					assertEquals(503, response.get(5, TimeUnit.SECONDS).statusCode());
+				else
+					assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(GdhcnClient.CircuitState.OPEN, client.getState());
+			assertTrue(client.isOpen());
+
+			ExecutionException e = assertThrows(ExecutionException.class, () -> client.send(REQUEST).get(5, TimeUnit.SECONDS));
+			assertInstanceOf(GdhcnTrustListUnavailableException.class, e.getCause());
+			assertEquals(3, exchanges.get());
+		});
+	}
+
+	@Test
+	void successfulProbeClosesCircuit() {
+		runner(1, 0, 1, 0, 16).run(context -> {
+			GdhcnClient client = context.getBean(GdhcnClient.class);
+			responder = n -> CompletableFuture.failedFuture(new IOException("reset"));
+			assertThrows(ExecutionException.class, () -> client.send(REQUEST).get(5, TimeUnit.SECONDS));
+			assertEquals(GdhcnClient.CircuitState.OPEN, client.getState());
+
+			responder = n -> ok(200);
+			assertEquals(200, client.send(REQUEST).get(5, TimeUnit.SECONDS).statusCode());
+			assertEquals(GdhcnClient.CircuitState.CLOSED, client.getState());
+		});
+	}
+
+	@Test
+	void transportErrorsAreRetried() {
+		runner(3, 0, 5, 30, 16).run(context -> {
+			GdhcnClient client = context.getBean(GdhcnClient.class);
+			responder = n -> n < 3 ? CompletableFuture.failedFuture(new IOException("reset")) : ok(200);
+			assertEquals(200, client.send(REQUEST).get(5, TimeUnit.SECONDS).statusCode());
+			assertEquals(3, exchanges.get());
+			assertEquals(2.0, context.getBean(MeterRegistry.class).get("gdhcn.client.retries").counter().count());
+			assertEquals(GdhcnClient.CircuitState.CLOSED, client.getState());
+		});
+	}
+
+	@Test
+	void slowRequestIsHedged() {
+		runner(1, 50, 5, 30, 16).run(context -> {
+			GdhcnClient client = context.getBean(GdhcnClient.class);
+			responder = n -> n == 1 ? new CompletableFuture<>() : ok(200);
+			assertEquals(200, client.send(REQUEST).get(5, TimeUnit.SECONDS).statusCode());
+			assertEquals(2, exchanges.get());
+			assertEquals(1.0, context.getBean(MeterRegistry.class).get("gdhcn.client.hedges").counter().count());
+		});
+	}
+
+	@Test
+	void bulkheadRejectionsDoNotOpenCircuit() {
+		runner(1, 0, 1, 30, 1).run(context -> {
+			GdhcnClient client = context.getBean(GdhcnClient.class);
+			CompletableFuture<HttpResponse<InputStream>> pending = new CompletableFuture<>();
+			responder = n -> pending;
+			CompletableFuture<HttpResponse<InputStream>> first = client.send(REQUEST);
+
+			ExecutionException e = assertThrows(ExecutionException.class, () -> client.send(REQUEST).get(5, TimeUnit.SECONDS));
+			assertInstanceOf(GdhcnTrustListUnavailableException.class, e.getCause());
+			assertEquals(GdhcnClient.CircuitState.CLOSED, client.getState());
+			assertFalse(client.isOpen());
+
+			pending.complete(StubHttpResponse.of(200, ""));
+			assertEquals(200, first.get(5, TimeUnit.SECONDS).statusCode());
+			assertEquals(1, exchanges.get());
+		});
+	}
+
+	private ApplicationContextRunner runner(int maxAttempts, long hedgeDelay, int failureThreshold, long openDuration,
+			int maxConcurrent) {
+		return contextRunner.withPropertyValues("gdhcn.client.maxAttempts=" + maxAttempts,
+				"gdhcn.client.hedgeDelay=" + hedgeDelay, "gdhcn.client.failureThreshold=" + failureThreshold,
+				"gdhcn.client.openDuration=" + openDuration, "gdhcn.client.maxConcurrent=" + maxConcurrent);
+	}
+
+	private static CompletableFuture<HttpResponse<InputStream>> ok(int status) {
+		return CompletableFuture.completedFuture(StubHttpResponse.of(status, ""));
+	}
+
+	private class StubTngHttpClientManager extends TngHttpClientManager {
+
+		private final HttpClient httpClient = new StubHttpClient();
+
+		@Override
+		public HttpClient getHttpClient() {
+			return httpClient;
+		}
+	}
+
+	private class StubHttpClient extends HttpClient {
+
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+				HttpResponse.BodyHandler<T> responseBodyHandler) {
+			return (CompletableFuture) responder.apply(exchanges.incrementAndGet());
+		}
+
+		@Override
+		public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+				HttpResponse.BodyHandler<T> responseBodyHandler, HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+			return sendAsync(request, responseBodyHandler);
+		}
+
+		@Override
+		public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Optional<CookieHandler> cookieHandler() {
+			return Optional.empty();
+		}
+
+		@Override
+		public Optional<Duration> connectTimeout() {
+			return Optional.empty();
+		}
+
+		@Override
+		public Redirect followRedirects() {
+			return Redirect.NEVER;
+		}
+
+		@Override
+		public Optional<ProxySelector> proxy() {
+			return Optional.empty();
+		}
+
+		@Override
+		public SSLContext sslContext() {
+			return null;
+		}
+
+		@Override
+		public SSLParameters sslParameters() {
+			return null;
+		}
+
+		@Override
+		public Optional<Authenticator> authenticator() {
+			return Optional.empty();
+		}
+
+		@Override
+		public Version version() {
+			return Version.HTTP_2;
+		}
+
+		@Override
+		public Optional<Executor> executor() {
+			return Optional.empty();
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package co.entomo.gdhcn.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import co.entomo.gdhcn.exceptions.GdhcnValidationException;
+import co.entomo.gdhcn.vo.GdhcnCertificateVO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HttpClientUtilsTest {
+
+	private final Map<String, PublicKey> publicKeys = new ConcurrentHashMap<>();
+	private final List<HttpRequest> requests = new CopyOnWriteArrayList<>();
+	private final AtomicInteger indexed = new AtomicInteger();
+	private final StubGdhcnClient gdhcnClient = new StubGdhcnClient();
+	private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withInitializer(context -> {
+				context.getBeanFactory().registerSingleton("gdhcnClient", gdhcnClient);
+				context.getBeanFactory().registerSingleton("certificateUtils", new StubCertificateUtils());
+			})
+			.withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+			.withBean(GdhcnKeyStore.class, CountingGdhcnKeyStore::new)
+			.withBean(TrustListSnapshot.class)
+			.withBean(HttpClientUtils.class)
+			.withPropertyValues("gdhcn.dev.url=https://tng.test", "gdhcn.trustList.refreshAhead=0",
+					"gdhcn.trustList.refreshInterval=3600", "gdhcn.trustList.minRefreshInterval=0",
+					"gdhcn.trustList.negativeTtl=30", "gdhcn.trustList.negativeMaxTtl=600",
+					"gdhcn.trustList.negativeMaxEntries=100", "gdhcn.trustList.awaitTimeout=5000",
+					"gdhcn.trustList.snapshotMaxAge=0", "gdhcn.client.maxConcurrent=4");
+	private volatile Function<HttpRequest, CompletableFuture<HttpResponse<InputStream>>> responder;
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void concurrentLookupsShareOneFetch() {
+		runner(300, 3600).run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			CompletableFuture<HttpResponse<InputStream>> pending = new CompletableFuture<>();
+			responder = request -> pending;
+			CompletableFuture<List<GdhcnCertificateVO>> first = utils.getTrustListAsync("XA");
+			CompletableFuture<List<GdhcnCertificateVO>> second = utils.getTrustListAsync("XA");
+			assertEquals(1, requests.size());
+
+			pending.complete(response(200, trustList("XA", "kid-1")));
+			assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+			utils.getTrustList("XA");
+			assertEquals(1, requests.size());
+		});
+	}
+
+	@Test
+	void fetchFailingToStartDoesNotBlockLaterLookups() {
+		runner(300, 3600).run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			responder = request -> {
+				throw new IllegalStateException("client closed");
+			};
+			assertThrows(GdhcnValidationException.class, () -> utils.getTrustList("XA"));
+			assertThrows(GdhcnValidationException.class, () -> utils.getTrustList("XA"));
+			assertEquals(2, requests.size());
+
+			responder = request -> respond(200, trustList("XA", "kid-1"));
+			assertEquals(1, utils.getTrustList("XA").size());
+		});
+	}
+
+	@Test
+	void malformedCountryCodesAreNotFetched() {
+		runner(300, 3600).run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			responder = request -> respond(200, trustList("XA", "kid-1"));
+			for (String countryCode : new String[] { "X A", "XA&group=CSCA", "X%41", "X|", "XAB", "" })
+				assertThrows(GdhcnValidationException.class, () -> utils.getTrustList(countryCode));
+			assertEquals(0, requests.size());
+		});
+	}
+
+	@Test
+	void staleListIsServedWhileRefreshedInBackground() {
+		runner(0, 3600).run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			responder = request -> respond(200, trustList("XA", "kid-1"));
+			List<GdhcnCertificateVO> first = utils.getTrustList("XA");
+
+			CompletableFuture<HttpResponse<InputStream>> pending = new CompletableFuture<>();
+			responder = request -> pending;
+			assertSame(first, utils.getTrustList("XA"));
+			assertSame(first, utils.getTrustList("XA"));
+			assertEquals(2, requests.size());
+
+			pending.complete(response(200, trustList("XA", "kid-1", "kid-2")));
+			long deadline = System.currentTimeMillis() + 5000;
+			while (utils.getTrustList("XA").size() != 2 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertEquals(2, utils.getTrustList("XA").size());
+		});
+	}
+
+	@Test
+	void cachedListOutlivesMaxStaleWhileCircuitIsOpen() {
+		runner(0, 0).run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			responder = request -> respond(200, trustList("XA", "kid-1"));
+			List<GdhcnCertificateVO> first = utils.getTrustList("XA");
+
+			gdhcnClient.open = true;
+			assertSame(first, utils.getTrustList("XA"));
+			assertNotNull(utils.getSigningKey("XA", "kid-1"));
+			assertEquals(1, requests.size());
+		});
+	}
+
+	@Test
+	void keysOfCountryWithFailedTrustListAreNotResolvedGlobally() {
+		runner(0, 0).run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			responder = request -> respond(200, trustList(country(request), "kid-" + country(request)));
+			assertNotNull(utils.getSigningKey("XA", "kid-XA"));
+			assertNotNull(utils.getSigningKey("XB", "kid-XB"));
+
+			responder = request -> respond(404, "");
+			assertThrows(GdhcnValidationException.class, () -> utils.getSigningKey("XA", "kid-XA"));
+			assertNotNull(utils.getSigningKey("XA", "kid-XB"));
+		});
+	}
+
+	@Test
+	void notModifiedKeepsListWithoutRewritingSnapshot() {
+		Path snapshotFile = tempDir.resolve("trustlist-snapshot.json");
+		runner(0, 0).withPropertyValues("gdhcn.trustList.snapshot=" + snapshotFile).run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			responder = request -> respond(200, trustList("XA", "kid-1"), "ETag", "\"v1\"");
+			List<GdhcnCertificateVO> first = utils.getTrustList("XA");
+			assertTrue(Files.exists(snapshotFile));
+			Files.delete(snapshotFile);
+
+			responder = request -> respond(304, "");
+			assertSame(first, utils.getTrustList("XA"));
+			assertEquals("\"v1\"", requests.get(1).headers().firstValue("If-None-Match").orElse(null));
+			assertFalse(Files.exists(snapshotFile));
+		});
+	}
+
+	@Test
+	void unchangedBodyWithoutValidatorsKeepsList() {
+		Path snapshotFile = tempDir.resolve("trustlist-snapshot.json");
+		runner(0, 0).withPropertyValues("gdhcn.trustList.snapshot=" + snapshotFile).run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			responder = request -> respond(200, trustList("XA", "kid-1"));
+			List<GdhcnCertificateVO> first = utils.getTrustList("XA");
+			Files.delete(snapshotFile);
+
+			assertSame(first, utils.getTrustList("XA"));
+			assertFalse(Files.exists(snapshotFile));
+
+			responder = request -> respond(200, trustList("XA", "kid-1", "kid-2"));
+			assertEquals(2, utils.getTrustList("XA").size());
+			assertTrue(Files.exists(snapshotFile));
+		});
+	}
+
+	@Test
+	void unchangedBodyWithoutValidatorsIsNotReindexed() {
+		runner(0, 0).run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			responder = request -> respond(200, trustList("XA", "kid-1"));
+			List<GdhcnCertificateVO> first = utils.getTrustList("XA");
+			assertEquals(1, indexed.get());
+
+			assertSame(first, utils.getTrustList("XA"));
+			assertNotNull(utils.getSigningKey("XA", "kid-1"));
+			assertEquals(3, requests.size());
+			assertEquals(1, indexed.get());
+
+			responder = request -> respond(200, trustList("XA", "kid-1", "kid-2"));
+			assertNotNull(utils.getSigningKey("XA", "kid-2"));
+			assertEquals(2, indexed.get());
+		});
+	}
+
+	@Test
+	void rateLimitedCountryFallsBackToSnapshotAndIsNotNegativelyCached() {
+		runner(0, 0).withPropertyValues("gdhcn.trustList.snapshotMaxAge=3600").run(context -> {
+			HttpClientUtils utils = context.getBean(HttpClientUtils.class);
+			responder = request -> respond(200, trustList("XA", "kid-1"));
+			List<GdhcnCertificateVO> fetched = utils.getTrustList("XA");
+
+			for (int status : new int[] { 401, 403, 408, 429, 503 }) {
+				responder = request -> respond(status, "");
+				assertSame(fetched, utils.getTrustList("XA"));
+			}
+			responder = request -> respond(200, trustList("XA", "kid-1", "kid-2"));
+			assertEquals(2, utils.getTrustList("XA").size());
+
+			responder = request -> respond(404, "");
+			assertThrows(GdhcnValidationException.class, () -> utils.getTrustList("XA"));
+			int sent = requests.size();
+			assertThrows(GdhcnValidationException.class, () -> utils.getTrustList("XA"));
+			assertEquals(sent, requests.size());
+		});
+	}
+
+	private ApplicationContextRunner runner(long ttl, long maxStale) {
+		return contextRunner.withPropertyValues("gdhcn.trustList.ttl=" + ttl, "gdhcn.trustList.maxStale=" + maxStale);
+	}
+
+	private static String country(HttpRequest request) {
+		String query = request.uri().getQuery();
+		return query.substring(query.indexOf("country=") + "country=".length());
+	}
+
+	private static String trustList(String country, String... kids) {
+		List<String> certificates = new ArrayList<>();
+		for (String kid : kids)
+			certificates.add("{\"kid\":\"" + kid + "\",\"country\":\"" + country + "\",\"group\":\"DSC\","
+					+ "\"certificate\":\"" + kid + "\",\"properties\":{\"ignored\":[1,2]}}");
+		return "[" + String.join(",", certificates) + "]";
+	}
+
+	private static CompletableFuture<HttpResponse<InputStream>> respond(int status, String body, String... headers) {
+		return CompletableFuture.completedFuture(response(status, body, headers));
+	}
+
+	private static HttpResponse<InputStream> response(int status, String body, String... headers) {
+		return StubHttpResponse.of(status, body, headers);
+	}
+
+	private class StubGdhcnClient extends GdhcnClient {
+
+		private volatile boolean open;
+
+		@Override
+		public CompletableFuture<HttpResponse<InputStream>> send(HttpRequest request) {
+			requests.add(request);
+			return responder.apply(request);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+	}
+
+	private class CountingGdhcnKeyStore extends GdhcnKeyStore {
+
+		@Override
+		public synchronized void index(String countryCode, List<GdhcnCertificateVO> certificates) {
+			indexed.incrementAndGet();
+			super.index(countryCode, certificates);
+		}
+	}
+
+	private class StubCertificateUtils extends CertificateUtils {
+
+		@Override
+		public PublicKey getPublicKey(String publicKeyContent) {
+			return publicKeys.computeIfAbsent(publicKeyContent, content -> {
+				try {
+					KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+					generator.initialize(256);
+					return generator.generateKeyPair().getPublic();
+				} catch (GeneralSecurityException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package co.entomo.gdhcn.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Canned GDHCN response for tests that stub the outbound HTTP client.
+ */
+record StubHttpResponse(int statusCode, HttpHeaders headers, byte[] content) implements HttpResponse<InputStream> {
+
+	/**
+	 * @param status  the status code.
+	 * @param body    the body.
+	 * @param headers header names and values, alternating.
+	 * @return the response.
+	 */
+	static HttpResponse<InputStream> of(int status, String body, String... headers) {
+		Map<String, List<String>> headerMap = new HashMap<>();
+		for (int i = 0; i < headers.length; i += 2)
+			headerMap.put(headers[i], List.of(headers[i + 1]));
+		return new StubHttpResponse(status, HttpHeaders.of(headerMap, (name, value) -> true),
+				body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public InputStream body() {
+		return new ByteArrayInputStream(content);
+	}
+
+	@Override
+	public HttpRequest request() {
+		return null;
+	}
+
+	@Override
+	public Optional<HttpResponse<InputStream>> previousResponse() {
+		return Optional.empty();
+	}
+
+	@Override
+	public Optional<SSLSession> sslSession() {
+		return Optional.empty();
+	}
+
+	@Override
+	public URI uri() {
+		return null;
+	}
+
+	@Override
+	public HttpClient.Version version() {
+		return HttpClient.Version.HTTP_1_1;
+	}
+}
@@ -0,0 +1,107 @@
+package co.entomo.gdhcn.util;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+class TngHttpClientManagerTest {
+
+	@TempDir
+	Path credentials;
+
+	private ApplicationContextRunner contextRunner() {
+		return new ApplicationContextRunner()
+				.withBean(TngHttpClientManager.class)
+				.withPropertyValues("tng.tls.pem=" + credentials.resolve("tls.pem"),
+						"tng.tls.key=" + credentials.resolve("tls.key"));
+	}
+
+	@Test
+	void mismatchedKeyKeepsThePreviousClient() throws Exception {
+		write(generateKeyPair(), "CN=tng-1");
+		contextRunner().run(context -> {
+			TngHttpClientManager manager = context.getBean(TngHttpClientManager.class);
+			HttpClient before = manager.getHttpClient();
+
+			manager.reload();
+			assertSame(before, manager.getHttpClient());
+
+			KeyPair rotated = generateKeyPair();
+			writeKey(rotated);
+			manager.reload();
+			assertSame(before, manager.getHttpClient());
+
+			writeCertificate(rotated, "CN=tng-2");
+			manager.reload();
+			assertNotSame(before, manager.getHttpClient());
+		});
+	}
+
+	@Test
+	void mismatchedKeyIsRejectedAtStartup() throws Exception {
+		write(generateKeyPair(), "CN=tng-1");
+		writeKey(generateKeyPair());
+		contextRunner().run(context -> assertNotNull(context.getStartupFailure()));
+	}
+
+	private static KeyPair generateKeyPair() throws GeneralSecurityException {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(256);
+		return generator.generateKeyPair();
+	}
+
+	private void write(KeyPair keyPair, String subject) throws Exception {
+		writeCertificate(keyPair, subject);
+		writeKey(keyPair);
+	}
+
+	/**
+	 * Writes a self-signed certificate of the key pair as PEM.
+	 */
+	private void writeCertificate(KeyPair keyPair, String subject)
+			throws GeneralSecurityException, OperatorCreationException, IOException {
+		X500Name name = new X500Name(subject);
+		long now = System.currentTimeMillis();
+		X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(
+				new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(now), new Date(now),
+						new Date(now + TimeUnit.DAYS.toMillis(1)), name, keyPair.getPublic())
+						.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+		Files.writeString(credentials.resolve("tls.pem"), pem("CERTIFICATE", certificate.getEncoded()));
+	}
+
+	/**
+	 * Writes the private key of the key pair as PEM encoded PKCS#8.
+	 */
+	private void writeKey(KeyPair keyPair) throws IOException {
+		Files.writeString(credentials.resolve("tls.key"), pem("PRIVATE KEY", keyPair.getPrivate().getEncoded()));
+	}
+
+	private static String pem(String type, byte[] der) {
+		return "-----BEGIN " + type + "-----\n"
+				+ Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der)
+				+ "\n-----END " + type + "-----\n";
+	}
+}
@@ -0,0 +1,101 @@
+package co.entomo.gdhcn.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import co.entomo.gdhcn.vo.SHLinkContent;
+import co.entomo.gdhcn.vo.StepStatus;
+import co.entomo.gdhcn.vo.ValidateCwtResponse;
+import co.entomo.gdhcn.vo.ValidationDescription;
+import co.entomo.gdhcn.vo.ValidationStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ValidationResultCacheTest {
+
+	private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+			.withBean(ValidationResultCache.class)
+			.withPropertyValues("gdhcn.validationCache.maxEntries=100", "gdhcn.validationCache.ttl=300",
+					"gdhcn.trustList.ttl=300");
+
+	@Test
+	void revokedKidsEvictTheirValidations() {
+		contextRunner.run(context -> {
+			ValidationResultCache cache = context.getBean(ValidationResultCache.class);
+			cache.put("a", "kid-a", null, response("a"));
+			cache.put("b", "kid-b", null, response("b"));
+			context.publishEvent(new KidsRevokedEvent("XA", Set.of("kid-a", "kid-c")));
+			assertNull(cache.get("a"));
+			assertNotNull(cache.get("b"));
+		});
+	}
+
+	@Test
+	void validationsDoNotOutliveTheirSmartHealthLink() {
+		contextRunner.run(context -> {
+			ValidationResultCache cache = context.getBean(ValidationResultCache.class);
+			cache.put("expired", "kid", System.currentTimeMillis() - 1, response("expired"));
+			assertNull(cache.get("expired"));
+
+			cache.put("expiring", "kid", System.currentTimeMillis() + 100, response("expiring"));
+			assertNotNull(cache.get("expiring"));
+			Thread.sleep(150);
+			assertNull(cache.get("expiring"));
+		});
+	}
+
+	@Test
+	void leastRecentlyUsedValidationIsDroppedWhenFull() {
+		contextRunner.withPropertyValues("gdhcn.validationCache.maxEntries=2").run(context -> {
+			ValidationResultCache cache = context.getBean(ValidationResultCache.class);
+			cache.put("a", "kid", null, response("a"));
+			cache.put("b", "kid", null, response("b"));
+			cache.get("a");
+			cache.put("c", "kid", null, response("c"));
+			assertNotNull(cache.get("a"));
+			assertNull(cache.get("b"));
+			assertNotNull(cache.get("c"));
+		});
+	}
+
+	@Test
+	void cachedValidationsCannotBeModifiedByCallers() {
+		contextRunner.run(context -> {
+			ValidationResultCache cache = context.getBean(ValidationResultCache.class);
+			ValidateCwtResponse stored = response("a");
+			cache.put("a", "kid", null, stored);
+			stored.getValidationStatus().get(1).setStatus(ValidationStatus.FAILED);
+			stored.getShLinkContent().setUrl("changed");
+
+			ValidateCwtResponse first = cache.get("a");
+			assertEquals(ValidationStatus.SUCCESS, first.getValidationStatus().get(1).getStatus());
+			assertEquals("https://example.org/a", first.getShLinkContent().getUrl());
+			first.getValidationStatus().remove(1);
+			first.getShLinkContent().setUrl("changed");
+
+			ValidateCwtResponse second = cache.get("a");
+			assertNotSame(first, second);
+			assertEquals(ValidationStatus.SUCCESS, second.getValidationStatus().get(1).getStatus());
+			assertEquals("https://example.org/a", second.getShLinkContent().getUrl());
+		});
+	}
+
+	private static ValidateCwtResponse response(String id) {
+		Map<Integer, StepStatus> validationStatus = new HashMap<>();
+		validationStatus.put(1, new StepStatus("1", ValidationStatus.SUCCESS, ValidationDescription.DECODE_BASE45));
+		return ValidateCwtResponse.builder()
+				.validationStatus(validationStatus)
+				.shLinkContent(SHLinkContent.builder().url("https://example.org/" + id).flag("U").build())
+				.build();
+	}
+}